@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigParseOptions;
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigResolveOptions;
+import io.dropwizard.configuration.ConfigurationException;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.hibernate.validator.HibernateValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.typesafe.config.ConfigFactory.defaultOverrides;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.ENV_KEY;
+
+/**
+ * Benchmarks of the full {@link TypeSafeConfigurationFactory#build(ConfigurationSourceProvider, String)},
+ * and of each stage of it on its own. Run with {@code -prof gc} to include allocation rates.
+ * <p>
+ * The {@link #build() build} benchmark clears the {@link ParsedSourceCache#shared shared parsed sources} first,
+ * so it measures building from sources not yet parsed in the JVM, while building again from the same sources,
+ * and from the {@link CompiledConfigCache compiled configuration cache}, are measured on their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBuildBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    GeneratedConfig.Size size;
+
+    @Param({"yml", "conf"})
+    String format;
+
+    private final ConfigurationSourceProvider sourceProvider = new FileConfigurationSourceProvider();
+    private final YAMLFactory yamlFactory = new YAMLFactory();
+    private final List<String> environments = List.of(GeneratedConfig.ENVIRONMENT);
+
+    private Path directory;
+    private String path;
+    private byte[] source;
+    private BenchmarkConfigurationFactory factory;
+    private Config loaded;
+    private Config resolvedWithOverrides;
+    private Config environmentSpecific;
+    private ConfigObject resolved;
+    private JsonNode resolvedJson;
+    private ConfigurationBuildContext compiledConfigCacheContext;
+
+    @Setup(Level.Trial)
+    public void generateAndPrepareEachStage() throws IOException, ConfigurationException {
+        System.setProperty(ENV_KEY, GeneratedConfig.ENVIRONMENT);
+        directory = Files.createTempDirectory("config-benchmark");
+        path = GeneratedConfig.write(size, format, directory).toString();
+        source = Files.readAllBytes(Path.of(path));
+        Validator validator = Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator();
+        factory = new BenchmarkConfigurationFactory(validator, Jackson.newObjectMapper());
+
+        loaded = load();
+        resolvedWithOverrides = resolveWithOverrides();
+        environmentSpecific = reduceToEnvironmentSpecific();
+        resolved = resolve();
+        resolvedJson = toJsonNode();
+
+        compiledConfigCacheContext = ConfigurationBuildContext.forEnvironments(GeneratedConfig.ENVIRONMENT)
+                .withCompiledConfigCache(directory.resolve("compiled"));
+        factory.buildResolved(sourceProvider, path, compiledConfigCacheContext);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteGenerated() throws IOException {
+        try (Stream<Path> generated = Files.walk(directory)) {
+            for (Path file : generated.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+        ParsedSourceCache.shared.clear();
+        System.clearProperty(ENV_KEY);
+    }
+
+    @Benchmark
+    public BenchmarkConfig build() throws IOException, ConfigurationException {
+        ParsedSourceCache.shared.clear();
+        return factory.build(sourceProvider, path);
+    }
+
+    @Benchmark
+    public BenchmarkConfig buildFromParsedSourceCache() throws IOException, ConfigurationException {
+        return factory.build(sourceProvider, path);
+    }
+
+    @Benchmark
+    public BenchmarkConfig buildFromCompiledConfigCache() throws IOException, ConfigurationException {
+        return factory.buildResolved(sourceProvider, path, compiledConfigCacheContext).getConfiguration();
+    }
+
+    @Benchmark
+    public Config load() throws IOException {
+        if (format.equals("yml")) {
+            return ConfigTreeReader.read(yamlFactory.createParser(source), path).toConfig();
+        } else {
+            return ConfigFactory.parseReader(new InputStreamReader(new ByteArrayInputStream(source), UTF_8), ConfigParseOptions.defaults());
+        }
+    }
+
+    @Benchmark
+    public Config resolveWithOverrides() {
+        return loaded.resolveWith(defaultOverrides(), ConfigResolveOptions.defaults().setAllowUnresolved(true));
+    }
+
+    @Benchmark
+    public Config reduceToEnvironmentSpecific() {
+        return TypeSafeConfigurationFactory.reduceToEnvironmentSpecific(environments, resolvedWithOverrides);
+    }
+
+    @Benchmark
+    public ConfigObject resolve() {
+        return environmentSpecific.resolve().withoutPath("variables").root();
+    }
+
+    @Benchmark
+    public String render() {
+        return resolved.render(ConfigRenderOptions.concise());
+    }
+
+    @Benchmark
+    public JsonNode toJsonNode() {
+        return ConfigJsonNodes.toJsonNode(resolved, factory.nodeFactory());
+    }
+
+    @Benchmark
+    public BenchmarkConfig bindAndValidate() throws IOException, ConfigurationException {
+        return factory.bind(resolvedJson, path);
+    }
+
+    static final class BenchmarkConfigurationFactory extends TypeSafeConfigurationFactory<BenchmarkConfig> {
+
+        BenchmarkConfigurationFactory(Validator validator, ObjectMapper mapper) {
+            super(BenchmarkConfig.class, validator, mapper, "dw");
+        }
+
+        BenchmarkConfig bind(JsonNode config, String path) throws IOException, ConfigurationException {
+            return build(config, path);
+        }
+
+        JsonNodeFactory nodeFactory() {
+            return mapper.getNodeFactory();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generates configuration sources of different sizes, in either YAML or HOCON syntax,
+ * with substitutions and a section per environment.
+ */
+public final class GeneratedConfig {
+
+    static final String ENVIRONMENT = "env0";
+
+    public enum Size {
+        SMALL(5, 5, 3),
+        MEDIUM(100, 20, 10),
+        LARGE(1000, 50, 30);
+
+        final int sections;
+        final int keysPerSection;
+        final int environments;
+
+        Size(int sections, int keysPerSection, int environments) {
+            this.sections = sections;
+            this.keysPerSection = keysPerSection;
+            this.environments = environments;
+        }
+    }
+
+    static Path write(Size size, String format, Path directory) throws IOException {
+        boolean yaml = format.equals("yml");
+        StringBuilder config = new StringBuilder();
+        object(config, yaml, 0, "variables");
+        field(config, yaml, 1, "host", "localhost");
+        end(config, yaml, 0);
+        object(config, yaml, 0, "database");
+        field(config, yaml, 1, "driverClass", "org.postgresql.Driver");
+        field(config, yaml, 1, "url", "jdbc:postgresql://${variables.host}/db");
+        field(config, yaml, 1, "user", "bench");
+        end(config, yaml, 0);
+        sections(config, yaml, 0, size, "default");
+        object(config, yaml, 0, "environments");
+        for (int environment = 0; environment < size.environments; environment++) {
+            object(config, yaml, 1, "env" + environment);
+            object(config, yaml, 2, "database");
+            field(config, yaml, 3, "user", "user" + environment);
+            end(config, yaml, 2);
+            sections(config, yaml, 2, size, "env" + environment);
+            end(config, yaml, 1);
+        }
+        end(config, yaml, 0);
+
+        Path file = directory.resolve("config-" + size.name().toLowerCase() + "." + format);
+        Files.write(file, config.toString().getBytes(UTF_8));
+        return file;
+    }
+
+    private static void sections(StringBuilder config, boolean yaml, int indent, Size size, String valuePrefix) {
+        for (int section = 0; section < size.sections; section++) {
+            object(config, yaml, indent, "section" + section);
+            for (int key = 0; key < size.keysPerSection; key++) {
+                switch (key % 3) {
+                    case 0: field(config, yaml, indent + 1, "key" + key, valuePrefix + " value " + key); break;
+                    case 1: field(config, yaml, indent + 1, "timeout" + key, key + " seconds"); break;
+                    default: field(config, yaml, indent + 1, "host" + key, "${variables.host}"); break;
+                }
+            }
+            end(config, yaml, indent);
+        }
+    }
+
+    private static void object(StringBuilder config, boolean yaml, int indent, String key) {
+        indent(config, indent).append(key).append(yaml ? ":\n" : " {\n");
+    }
+
+    private static void end(StringBuilder config, boolean yaml, int indent) {
+        if (!yaml) {
+            indent(config, indent).append("}\n");
+        }
+    }
+
+    private static void field(StringBuilder config, boolean yaml, int indent, String key, String value) {
+        indent(config, indent).append(key).append(yaml ? ": " : " = ");
+        if (value.startsWith("${")) {
+            config.append(value);
+        } else if (value.contains("${")) {
+            int substitution = value.indexOf("${");
+            config.append(yaml ? "\"" + value + "\"" : "\"" + value.substring(0, substitution) + "\"" + value.substring(substitution));
+        } else {
+            config.append('"').append(value).append('"');
+        }
+        config.append('\n');
+    }
+
+    private static StringBuilder indent(StringBuilder config, int indent) {
+        for (int i = 0; i < indent; i++) {
+            config.append("  ");
+        }
+        return config;
+    }
+
+    private GeneratedConfig() {
+    }
+}
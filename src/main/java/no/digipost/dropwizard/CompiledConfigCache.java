@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A persistent cache of resolved and environment specific configuration trees, stored as
+ * encrypted <a href="https://github.com/FasterXML/smile-format-specification">Smile</a> files
+ * in a local directory.
+ * <p>
+ * The cache key is a digest of the content of every configuration source, the active environments,
+ * and the values of any overrides, e.g. system properties, and environment variables referenced by substitutions in the sources.
+ * The same digest is used to derive the key for encrypting the cached tree, so the cache never contains
+ * any values in plaintext, and it can only be read by someone already in possession of every input
+ * used to produce the configuration.
+ */
+final class CompiledConfigCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CompiledConfigCache.class);
+
+    private static final String FILE_SUFFIX = ".config.smile";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final SecureRandom random = new SecureRandom();
+    private static final String CONFIG_FIELD = "config";
+    private static final String SECRET_VALUE_PATHS_FIELD = "secretValuePaths";
+
+    private final Path directory;
+    private final ObjectMapper smileMapper;
+
+    CompiledConfigCache(Path directory) {
+        this.directory = directory;
+        this.smileMapper = new ObjectMapper(new SmileFactory());
+    }
+
+    /**
+     * Compute the cache key for the given sources.
+     *
+     * @param sources the content of every source used to build the configuration, keyed by path,
+     *                in the order they are merged.
+     * @param context the context of the build, with the active environments and the overrides.
+     */
+    Key key(Map<String, byte[]> sources, ConfigurationBuildContext context) {
+        MessageDigest digest = sha256();
+        update(digest, "environments");
+        context.getEnvironments().forEach(environment -> update(digest, environment));
+        Set<String> substitutions = new TreeSet<>();
+        sources.forEach((path, content) -> {
+            update(digest, "source");
+            update(digest, path);
+            update(digest, content);
+            substitutions.addAll(substitutionsIn(new String(content, UTF_8)));
+        });
+        for (String substitution : substitutions) {
+            update(digest, "substitution");
+            update(digest, substitution);
+            update(digest, String.valueOf(context.renderedOverride(substitution)));
+            update(digest, String.valueOf(System.getenv(substitution)));
+        }
+        return new Key(digest.digest());
+    }
+
+    Optional<Entry> get(Key key) {
+        Path file = key.fileIn(directory);
+        try {
+            byte[] encrypted = Files.readAllBytes(file);
+            ByteBuffer input = ByteBuffer.wrap(encrypted);
+            byte[] iv = new byte[IV_LENGTH];
+            input.get(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, key.encryptionKey, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            byte[] smile = cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+            JsonNode entry = smileMapper.readTree(smile);
+            if (!entry.path(CONFIG_FIELD).isObject()) {
+                throw new IOException("Not a compiled configuration entry");
+            }
+            Set<String> secretValuePaths = new LinkedHashSet<>();
+            entry.path(SECRET_VALUE_PATHS_FIELD).forEach(secretValuePath -> secretValuePaths.add(secretValuePath.asText()));
+            return Optional.of(new Entry(entry.get(CONFIG_FIELD), Collections.unmodifiableSet(secretValuePaths)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            log.warn("Ignoring unreadable compiled configuration {}, because {}: '{}'", file, e.getClass().getSimpleName(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param secretValuePaths the paths of the values set by the secret config, stored with the tree,
+     *                         as the secret config is not parsed when the tree is read from the cache.
+     */
+    void put(Key key, JsonNode config, Set<String> secretValuePaths) {
+        Path file = key.fileIn(directory);
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, key.encryptionKey, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            ObjectNode entry = smileMapper.createObjectNode();
+            entry.set(CONFIG_FIELD, config);
+            secretValuePaths.forEach(entry.putArray(SECRET_VALUE_PATHS_FIELD)::add);
+            byte[] encrypted = cipher.doFinal(smileMapper.writeValueAsBytes(entry));
+
+            Files.createDirectories(directory);
+            Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tempFile, ByteBuffer.allocate(IV_LENGTH + encrypted.length).put(iv).put(encrypted).array());
+                Files.move(tempFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            log.warn("Unable to write compiled configuration {}, because {}: '{}'", file, e.getClass().getSimpleName(), e.getMessage());
+        }
+    }
+
+    static Set<String> substitutionsIn(String text) {
+        Set<String> substitutions = new TreeSet<>();
+        for (int start = text.indexOf("${"); start >= 0; start = text.indexOf("${", start + 2)) {
+            int end = text.indexOf('}', start);
+            if (end < 0) {
+                break;
+            }
+            String substitution = text.substring(start + 2, end).trim();
+            substitutions.add(substitution.startsWith("?") ? substitution.substring(1).trim() : substitution);
+        }
+        return substitutions;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        update(digest, value.getBytes(UTF_8));
+    }
+
+    private static void update(MessageDigest digest, byte[] value) {
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(value.length).array());
+        digest.update(value);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every Java platform", e);
+        }
+    }
+
+    /**
+     * A cached config tree, with the paths of the values from the secret config.
+     */
+    static final class Entry {
+        final JsonNode config;
+        final Set<String> secretValuePaths;
+
+        Entry(JsonNode config, Set<String> secretValuePaths) {
+            this.config = config;
+            this.secretValuePaths = secretValuePaths;
+        }
+    }
+
+    static final class Key {
+        private final String fileName;
+        private final SecretKeySpec encryptionKey;
+
+        private Key(byte[] inputsDigest) {
+            MessageDigest fileNameDigest = sha256();
+            update(fileNameDigest, "file name");
+            fileNameDigest.update(inputsDigest);
+            this.fileName = HexFormat.of().formatHex(fileNameDigest.digest()) + FILE_SUFFIX;
+
+            MessageDigest encryptionKeyDigest = sha256();
+            update(encryptionKeyDigest, "encryption key");
+            encryptionKeyDigest.update(inputsDigest);
+            this.encryptionKey = new SecretKeySpec(encryptionKeyDigest.digest(), "AES");
+        }
+
+        Path fileIn(Path directory) {
+            return directory.resolve(fileName);
+        }
+
+        @Override
+        public String toString() {
+            return fileName;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Loads several configuration sources concurrently. Opening and reading sources is
+ * mostly waiting for I/O, so this is done on a dedicated pool of daemon threads
+ * instead of the common {@link java.util.concurrent.ForkJoinPool}.
+ */
+final class ConcurrentSourceLoading {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "configuration-source-loader-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Load all the given sources concurrently. The first source is loaded on the calling thread.
+     *
+     * @return the loaded sources, in the same order as the given paths.
+     * @throws RuntimeException the exception from loading the first failing source, in the order of
+     *                          the given paths, i.e. the same exception as if loading the sources one
+     *                          after the other.
+     */
+    static <R> List<R> loadAll(List<String> paths, Function<String, R> load) {
+        List<CompletableFuture<R>> remaining = new ArrayList<>(paths.size() - 1);
+        for (String path : paths.subList(1, paths.size())) {
+            remaining.add(supplyAsync(() -> load.apply(path)));
+        }
+        List<R> loaded = new ArrayList<>(paths.size());
+        loaded.add(load.apply(paths.get(0)));
+        for (CompletableFuture<R> source : remaining) {
+            loaded.add(join(source));
+        }
+        return loaded;
+    }
+
+    static <R> CompletableFuture<R> supplyAsync(Supplier<R> supplier) {
+        return CompletableFuture.supplyAsync(supplier, executor);
+    }
+
+    /**
+     * Wait for the result of a future, and throw any exception it completed with
+     * as-is, instead of wrapped in a {@link CompletionException}.
+     */
+    static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private ConcurrentSourceLoading() {
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigList;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A dump of a resolved config tree, written one {@code path = value} line at a time, in the order of the paths,
+ * instead of rendering the whole tree at once. Values are redacted if they are from the secret config, or if
+ * their path is sensitive, i.e. any key in the path looks like it holds a credential, e.g. {@code password} or
+ * {@code apiKey}, or the path is within one of the {@link #withSensitivePaths(String...) given sensitive paths}.
+ * <p>
+ * The dump is usually of the configuration currently in use, e.g. as written by {@link ConfigDumpTask}:
+ * <pre>
+ * ConfigDump.of(factory.lastBuilt()).withSensitivePaths("database.url").logTo(log);
+ * </pre>
+ */
+public final class ConfigDump {
+
+    public static final String REDACTED = "<redacted>";
+
+    private static final Pattern SENSITIVE_KEY = Pattern.compile(
+            "(?i).*(password|passphrase|secret|token|credential|private[_-]?key|api[_-]?key).*");
+    private static final ConfigRenderOptions valueRenderOptions = ConfigRenderOptions.concise();
+
+    private final ConfigObject root;
+    private final Set<String> secretValuePaths;
+    private final Set<String> sensitivePaths;
+
+    /**
+     * @return a dump of a built configuration, redacting values from the secret config it was built with,
+     *         also when the configuration is built from the compiled config cache.
+     */
+    public static ConfigDump of(ResolvedConfiguration<?> configuration) {
+        return new ConfigDump(configuration.getConfigObject(), configuration.getSecretValuePaths(), Set.of());
+    }
+
+    /**
+     * @param secretConfig the secret config the tree is resolved with, reduced to the same environments,
+     *                     of which every value set, including every value within it, is redacted.
+     */
+    public static ConfigDump of(ConfigObject root, ConfigObject secretConfig) {
+        return new ConfigDump(root, secretValuePaths(secretConfig), Set.of());
+    }
+
+    static ConfigDump of(ConfigObject root, Set<String> secretValuePaths) {
+        return new ConfigDump(root, secretValuePaths, Set.of());
+    }
+
+    /**
+     * Find the paths set by the secret config from the secret config itself, as the origin of a resolved value
+     * does not tell whether it is from the secret config, e.g. if the secret config sets it with a substitution.
+     *
+     * @return the path of every value set by the secret config, as written in the dump, where a value which is not
+     *         an object, or which is not known to be an object before it is resolved, is redacted as a whole.
+     */
+    static Set<String> secretValuePaths(ConfigObject secretConfig) {
+        Set<String> secretValuePaths = new LinkedHashSet<>();
+        collectValuePaths(secretConfig, new StringBuilder(), secretValuePaths);
+        return Collections.unmodifiableSet(secretValuePaths);
+    }
+
+    private static void collectValuePaths(ConfigObject object, StringBuilder path, Set<String> valuePaths) {
+        for (Map.Entry<String, ConfigValue> field : object.entrySet()) {
+            int parentLength = path.length();
+            appendKey(path, field.getKey());
+            if (!(field.getValue() instanceof ConfigObject) || !collectObjectValuePaths((ConfigObject) field.getValue(), path, valuePaths)) {
+                valuePaths.add(path.toString());
+            }
+            path.setLength(parentLength);
+        }
+    }
+
+    private static boolean collectObjectValuePaths(ConfigObject object, StringBuilder path, Set<String> valuePaths) {
+        try {
+            collectValuePaths(object, path, valuePaths);
+            return true;
+        } catch (ConfigException.NotResolved e) {
+            return false;
+        }
+    }
+
+    private ConfigDump(ConfigObject root, Set<String> secretValuePaths, Set<String> sensitivePaths) {
+        this.root = root;
+        this.secretValuePaths = secretValuePaths;
+        this.sensitivePaths = sensitivePaths;
+    }
+
+    /**
+     * @param paths paths in the config, which values, including every value within them, should be redacted,
+     *              in addition to the values redacted by default.
+     * @return a new dump which also redacts the given paths.
+     */
+    public ConfigDump withSensitivePaths(String ... paths) {
+        Set<String> sensitive = new LinkedHashSet<>(sensitivePaths);
+        for (String path : paths) {
+            sensitive.add(ConfigUtil.joinPath(ConfigUtil.splitPath(path)));
+        }
+        return new ConfigDump(root, secretValuePaths, Collections.unmodifiableSet(sensitive));
+    }
+
+    /**
+     * Write the dump, one {@code path = value} line for each value.
+     */
+    public void writeTo(Appendable output) throws IOException {
+        dump((path, value) -> output.append(path).append(" = ").append(value).append('\n'));
+    }
+
+    /**
+     * Log the dump at debug level, as one log event for each value, and only if debug
+     * is enabled for the logger, so nothing is rendered otherwise.
+     */
+    public void logTo(Logger logger) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        try {
+            dump((path, value) -> logger.debug("{} = {}", path.toString(), value));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface ValueWriter {
+        void write(CharSequence path, String value) throws IOException;
+    }
+
+    private interface LeafVisitor {
+        void visit(StringBuilder path, ConfigValue value, boolean sensitive) throws IOException;
+    }
+
+    private void dump(ValueWriter writer) throws IOException {
+        Set<String> redactedPaths = new HashSet<>(secretValuePaths);
+        redactedPaths.addAll(sensitivePaths);
+        walk(root, new StringBuilder(), false, redactedPaths, (path, value, sensitive) ->
+                writer.write(path, sensitive ? REDACTED : value.render(valueRenderOptions)));
+    }
+
+    private static void walk(ConfigValue value, StringBuilder path, boolean sensitive, Set<String> sensitivePaths, LeafVisitor visitor) throws IOException {
+        if (value instanceof ConfigObject) {
+            List<String> keys = new ArrayList<>(((ConfigObject) value).keySet());
+            Collections.sort(keys);
+            for (String key : keys) {
+                int parentLength = path.length();
+                appendKey(path, key);
+                walk(((ConfigObject) value).get(key), path, sensitive || isSensitive(key, path, sensitivePaths), sensitivePaths, visitor);
+                path.setLength(parentLength);
+            }
+        } else if (value instanceof ConfigList && !((ConfigList) value).isEmpty()) {
+            ConfigList list = (ConfigList) value;
+            for (int i = 0; i < list.size(); i++) {
+                int parentLength = path.length();
+                path.append('[').append(i).append(']');
+                walk(list.get(i), path, sensitive, sensitivePaths, visitor);
+                path.setLength(parentLength);
+            }
+        } else {
+            visitor.visit(path, value, sensitive);
+        }
+    }
+
+    private static boolean isSensitive(String key, StringBuilder path, Set<String> sensitivePaths) {
+        return SENSITIVE_KEY.matcher(key).matches() || (!sensitivePaths.isEmpty() && sensitivePaths.contains(path.toString()));
+    }
+
+    private static void appendKey(StringBuilder path, String key) {
+        if (path.length() > 0) {
+            path.append('.');
+        }
+        path.append(ConfigUtil.joinPath(key));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Admin task writing a redacted {@link ConfigDump} of the configuration currently in use, e.g.
+ * {@code curl -X POST http://localhost:8081/tasks/config-dump}. Additional paths to redact can be given
+ * with the {@code redact} parameter, e.g. {@code ?redact=database.url}.
+ */
+public class ConfigDumpTask extends Task {
+
+    public static final String NAME = "config-dump";
+
+    private final Supplier<? extends ResolvedConfiguration<?>> configuration;
+    private final String[] sensitivePaths;
+
+    /**
+     * @param configuration supplies the configuration currently in use, or {@code null} if none is built.
+     * @param sensitivePaths paths which are always redacted, in addition to the paths redacted by {@link ConfigDump}.
+     */
+    public ConfigDumpTask(Supplier<? extends ResolvedConfiguration<?>> configuration, String ... sensitivePaths) {
+        super(NAME, "text/plain;charset=UTF-8");
+        this.configuration = configuration;
+        this.sensitivePaths = sensitivePaths;
+    }
+
+    @Override
+    public void execute(Map<String, List<String>> parameters, PrintWriter output) throws Exception {
+        ResolvedConfiguration<?> current = configuration.get();
+        if (current == null) {
+            output.println("No configuration is built");
+            return;
+        }
+        ConfigDump dump = ConfigDump.of(current).withSensitivePaths(sensitivePaths);
+        List<String> redact = parameters.get("redact");
+        if (redact != null) {
+            dump = dump.withSensitivePaths(redact.toArray(new String[0]));
+        }
+        dump.writeTo(output);
+        output.flush();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.ConfigList;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts a resolved tree of {@link ConfigValue}s to a Jackson {@link JsonNode} tree,
+ * which can be bound to a configuration class without rendering and reparsing the config,
+ * and back again.
+ */
+final class ConfigJsonNodes {
+
+    static JsonNode toJsonNode(ConfigValue value, JsonNodeFactory nodes) {
+        switch (value.valueType()) {
+            case OBJECT:
+                ObjectNode object = nodes.objectNode();
+                for (Map.Entry<String, ConfigValue> field : ((ConfigObject) value).entrySet()) {
+                    object.set(field.getKey(), toJsonNode(field.getValue(), nodes));
+                }
+                return object;
+            case LIST:
+                ArrayNode array = nodes.arrayNode();
+                for (ConfigValue element : (ConfigList) value) {
+                    array.add(toJsonNode(element, nodes));
+                }
+                return array;
+            case NUMBER:
+                Number number = (Number) value.unwrapped();
+                if (number instanceof Integer) {
+                    return nodes.numberNode(number.intValue());
+                } else if (number instanceof Long) {
+                    return nodes.numberNode(number.longValue());
+                } else {
+                    return nodes.numberNode(number.doubleValue());
+                }
+            case BOOLEAN:
+                return nodes.booleanNode((Boolean) value.unwrapped());
+            case STRING:
+                return nodes.textNode((String) value.unwrapped());
+            case NULL:
+                return nodes.nullNode();
+            default:
+                throw new IllegalArgumentException("Unsupported config value type " + value.valueType() + " from " + value.origin().description());
+        }
+    }
+
+    static ConfigObject toConfigObject(JsonNode node, String originDescription) {
+        return (ConfigObject) toConfigValue(node, originDescription);
+    }
+
+    private static ConfigValue toConfigValue(JsonNode node, String originDescription) {
+        if (node.isObject()) {
+            Map<String, ConfigValue> fields = new LinkedHashMap<>();
+            node.properties().forEach(field -> fields.put(field.getKey(), toConfigValue(field.getValue(), originDescription)));
+            return ConfigValueFactory.fromMap(fields, originDescription);
+        } else if (node.isArray()) {
+            List<ConfigValue> elements = new ArrayList<>(node.size());
+            node.elements().forEachRemaining(element -> elements.add(toConfigValue(element, originDescription)));
+            return ConfigValueFactory.fromIterable(elements, originDescription);
+        } else if (node.isNumber()) {
+            return ConfigValueFactory.fromAnyRef(node.numberValue(), originDescription);
+        } else if (node.isBoolean()) {
+            return ConfigValueFactory.fromAnyRef(node.booleanValue(), originDescription);
+        } else if (node.isNull()) {
+            return ConfigValueFactory.fromAnyRef(null, originDescription);
+        } else {
+            return ConfigValueFactory.fromAnyRef(node.asText(), originDescription);
+        }
+    }
+
+    private ConfigJsonNodes() {
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigList;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A 64-bit hash of every subtree of a resolved config tree, computed in a single pass.
+ * Comparing two hashed trees only descends into subtrees with differing hashes,
+ * so finding the changes between two large configs with few changes is cheap.
+ */
+final class ConfigTreeHash {
+
+    private static final long OBJECT_SEED = 0x4f424a454354L;
+    private static final long LIST_SEED = 0x4c495354L;
+
+    private final long hash;
+    private final Map<String, ConfigTreeHash> fields;
+
+    static ConfigTreeHash of(ConfigValue value) {
+        switch (value.valueType()) {
+            case OBJECT:
+                ConfigObject object = (ConfigObject) value;
+                Map<String, ConfigTreeHash> fields = new HashMap<>(object.size() * 2);
+                long fieldsHash = OBJECT_SEED;
+                for (Map.Entry<String, ConfigValue> field : object.entrySet()) {
+                    ConfigTreeHash fieldHash = of(field.getValue());
+                    fields.put(field.getKey(), fieldHash);
+                    fieldsHash += mix(hash(field.getKey()) ^ fieldHash.hash);
+                }
+                return new ConfigTreeHash(mix(fieldsHash), fields);
+            case LIST:
+                long elementsHash = LIST_SEED;
+                for (ConfigValue element : (ConfigList) value) {
+                    elementsHash = mix(elementsHash * 31 + of(element).hash);
+                }
+                return new ConfigTreeHash(elementsHash, null);
+            case NUMBER:
+                Number number = (Number) value.unwrapped();
+                long bits = number instanceof Double ? Double.doubleToLongBits(number.doubleValue()) : number.longValue();
+                return new ConfigTreeHash(mix(bits ^ value.valueType().ordinal()), null);
+            case NULL:
+                return new ConfigTreeHash(mix(value.valueType().ordinal()), null);
+            default:
+                return new ConfigTreeHash(mix(hash(String.valueOf(value.unwrapped())) ^ value.valueType().ordinal()), null);
+        }
+    }
+
+    private ConfigTreeHash(long hash, Map<String, ConfigTreeHash> fields) {
+        this.hash = hash;
+        this.fields = fields;
+    }
+
+    /**
+     * Find the paths which differ between two hashed config trees. A path is only included
+     * once for a changed subtree, i.e. if an object is changed into a string, only the path
+     * of the object is included, and not the paths of all the fields of the object.
+     *
+     * @return the changed paths, as lists of path elements
+     */
+    Set<List<String>> changedPathsTo(ConfigTreeHash other) {
+        Set<List<String>> changedPaths = new LinkedHashSet<>();
+        collectChangedPaths(Collections.emptyList(), this, other, changedPaths);
+        return changedPaths;
+    }
+
+    private static void collectChangedPaths(List<String> path, ConfigTreeHash from, ConfigTreeHash to, Set<List<String>> changedPaths) {
+        if (from.hash == to.hash) {
+            return;
+        } else if (from.fields == null || to.fields == null) {
+            changedPaths.add(path);
+            return;
+        }
+        Set<String> keys = new HashSet<>(from.fields.keySet());
+        keys.addAll(to.fields.keySet());
+        for (String key : keys) {
+            List<String> fieldPath = new ArrayList<>(path.size() + 1);
+            fieldPath.addAll(path);
+            fieldPath.add(key);
+            ConfigTreeHash fromField = from.fields.get(key);
+            ConfigTreeHash toField = to.fields.get(key);
+            if (fromField == null || toField == null) {
+                changedPaths.add(fieldPath);
+            } else {
+                collectChangedPaths(fieldPath, fromField, toField, changedPaths);
+            }
+        }
+    }
+
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigOrigin;
+import com.typesafe.config.ConfigOriginFactory;
+import com.typesafe.config.ConfigParseOptions;
+import com.typesafe.config.ConfigSyntax;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.ENVIRONMENTS_CONFIG_KEY;
+
+/**
+ * Reads the token stream of a Jackson {@link JsonParser}, e.g. from a YAML document,
+ * directly into a tree of {@link ConfigValue}s. String values containing {@code ${...}}
+ * become substitutions, which are resolved as usual by Typesafe Config. Every value
+ * gets an origin with the description of the source and the line number where it
+ * was declared.
+ */
+final class ConfigTreeReader {
+
+    private static final String SUBSTITUTION_START = "${";
+    private static final String SUBSTITUTION_KEY = "value";
+
+    private final JsonParser parser;
+    private final Set<String> keptEnvironments;
+    private final ConfigOrigin sourceOrigin;
+    private final ConfigParseOptions substitutionParseOptions;
+
+    static ConfigObject read(JsonParser parser, String originDescription) throws IOException {
+        return read(parser, originDescription, null);
+    }
+
+    /**
+     * Read a config tree, skipping the tokens of every environment specific block, i.e.
+     * {@code environments.<name>}, which is not one of the given environments.
+     *
+     * @param keptEnvironments the environments to keep, or {@code null} to keep all.
+     */
+    static ConfigObject read(JsonParser parser, String originDescription, Set<String> keptEnvironments) throws IOException {
+        return new ConfigTreeReader(parser, originDescription, keptEnvironments).readRoot();
+    }
+
+    private ConfigTreeReader(JsonParser parser, String originDescription, Set<String> keptEnvironments) {
+        this.parser = parser;
+        this.keptEnvironments = keptEnvironments;
+        this.sourceOrigin = ConfigOriginFactory.newSimple(originDescription);
+        this.substitutionParseOptions = ConfigParseOptions.defaults()
+                .setSyntax(ConfigSyntax.CONF)
+                .setOriginDescription(originDescription);
+    }
+
+    private ConfigObject readRoot() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return ConfigFactory.empty(sourceOrigin.description()).root();
+        } else if (token != JsonToken.START_OBJECT) {
+            throw new ConfigException.Parse(currentOrigin(), "Document must have an object at the root, but was " + token);
+        }
+        return readObject(true);
+    }
+
+    private ConfigValue readValue(JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT: return readObject(false);
+            case START_ARRAY: return readList();
+            case VALUE_STRING: return readString();
+            case VALUE_NUMBER_INT: return readInteger();
+            case VALUE_NUMBER_FLOAT: return ConfigValueFactory.fromAnyRef(parser.getDoubleValue()).withOrigin(currentOrigin());
+            case VALUE_TRUE: return ConfigValueFactory.fromAnyRef(true).withOrigin(currentOrigin());
+            case VALUE_FALSE: return ConfigValueFactory.fromAnyRef(false).withOrigin(currentOrigin());
+            case VALUE_NULL: return ConfigValueFactory.fromAnyRef(null).withOrigin(currentOrigin());
+            case VALUE_EMBEDDED_OBJECT: return ConfigValueFactory.fromAnyRef(parser.getText()).withOrigin(currentOrigin());
+            default: throw new ConfigException.Parse(currentOrigin(), "Unexpected " + token);
+        }
+    }
+
+    private ConfigObject readObject(boolean root) throws IOException {
+        ConfigOrigin origin = currentOrigin();
+        Map<String, ConfigValue> fields = new LinkedHashMap<>();
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_OBJECT; token = parser.nextToken()) {
+            String key = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+            if (root && keptEnvironments != null && valueToken == JsonToken.START_OBJECT && key.equals(ENVIRONMENTS_CONFIG_KEY)) {
+                fields.put(key, readEnvironments());
+            } else {
+                fields.put(key, readValue(valueToken));
+            }
+        }
+        return ConfigValueFactory.fromMap(fields).withOrigin(origin);
+    }
+
+    private ConfigObject readEnvironments() throws IOException {
+        ConfigOrigin origin = currentOrigin();
+        Map<String, ConfigValue> environments = new LinkedHashMap<>();
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_OBJECT; token = parser.nextToken()) {
+            String environment = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+            if (keptEnvironments.contains(environment)) {
+                environments.put(environment, readValue(valueToken));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return ConfigValueFactory.fromMap(environments).withOrigin(origin);
+    }
+
+    private ConfigValue readList() throws IOException {
+        ConfigOrigin origin = currentOrigin();
+        List<ConfigValue> elements = new ArrayList<>();
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            elements.add(readValue(token));
+        }
+        return ConfigValueFactory.fromIterable(elements).withOrigin(origin);
+    }
+
+    private ConfigValue readInteger() throws IOException {
+        switch (parser.getNumberType()) {
+            case INT: return ConfigValueFactory.fromAnyRef(parser.getIntValue()).withOrigin(currentOrigin());
+            case LONG: return ConfigValueFactory.fromAnyRef(parser.getLongValue()).withOrigin(currentOrigin());
+            default: return ConfigValueFactory.fromAnyRef(parser.getNumberValue()).withOrigin(currentOrigin());
+        }
+    }
+
+    private ConfigValue readString() throws IOException {
+        String text = parser.getText();
+        ConfigOrigin origin = currentOrigin();
+        if (text.contains(SUBSTITUTION_START)) {
+            return substitution(text, origin);
+        }
+        return ConfigValueFactory.fromAnyRef(text).withOrigin(origin);
+    }
+
+    /**
+     * Only the single value containing substitutions is parsed as HOCON, as there is
+     * no public API in Typesafe Config to construct substitutions programmatically.
+     * Any text surrounding the substitutions is quoted, so that it is kept verbatim.
+     */
+    private ConfigValue substitution(String text, ConfigOrigin origin) {
+        StringBuilder expression = new StringBuilder(SUBSTITUTION_KEY.length() + text.length() + 8).append(SUBSTITUTION_KEY).append('=');
+        int position = 0;
+        while (position < text.length()) {
+            int start = text.indexOf(SUBSTITUTION_START, position);
+            int end = start >= 0 ? text.indexOf('}', start) : -1;
+            if (end < 0) {
+                expression.append(ConfigUtil.quoteString(text.substring(position)));
+                break;
+            }
+            if (start > position) {
+                expression.append(ConfigUtil.quoteString(text.substring(position, start)));
+            }
+            expression.append(text, start, end + 1);
+            position = end + 1;
+        }
+        return ConfigFactory.parseString(expression.toString(), substitutionParseOptions).root().get(SUBSTITUTION_KEY).withOrigin(origin);
+    }
+
+    private ConfigOrigin currentOrigin() {
+        int line = parser.currentTokenLocation().getLineNr();
+        return line > 0 ? sourceOrigin.withLineNumber(line) : sourceOrigin;
+    }
+
+}
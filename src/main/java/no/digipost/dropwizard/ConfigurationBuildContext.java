@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigResolver;
+import com.typesafe.config.ConfigValue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.CONFIG_CACHE_KEY;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.ENV_KEY;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.PRECOMPILED_CONFIG_KEY;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.PRUNE_ENVIRONMENTS_KEY;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.SECRET_KEY;
+
+/**
+ * The inputs for building a configuration, other than the configuration sources themselves:
+ * the active environments, the path of the secret config, the overrides used to resolve
+ * substitutions in the first pass, and the options for how the configuration is built.
+ * <p>
+ * By default, the context is read from system properties by {@link #fromSystemProperties(String)}
+ * each time a configuration is built. Giving the context explicitly with
+ * {@link TypeSafeConfigurationFactory#buildResolved(io.dropwizard.configuration.ConfigurationSourceProvider, String, ConfigurationBuildContext)}
+ * makes it possible to build configurations for different environments concurrently, e.g. in tests,
+ * without mutating global state. Instances are immutable.
+ */
+public final class ConfigurationBuildContext {
+
+    private static final String OVERRIDE_WITH_ENV_VARS_KEY = "config.override_with_env_vars";
+
+    private final List<String> environments;
+    private final Optional<String> secretPath;
+    private final Config overrides;
+    private final Optional<ConfigResolver> overrideResolver;
+    private final Optional<Path> compiledConfigCache;
+    private final boolean pruneEnvironments;
+    private final boolean usePrecompiledConfig;
+
+    /**
+     * Read the context from system properties, in the same way as
+     * {@link TypeSafeConfigurationFactory#build(io.dropwizard.configuration.ConfigurationSourceProvider, String)}:
+     * <ul>
+     * <li>the environments from {@value TypeSafeConfigurationFactory#ENV_KEY}, as a comma separated list</li>
+     * <li>the secret config from {@value TypeSafeConfigurationFactory#SECRET_KEY}</li>
+     * <li>the overrides from system properties, and then environment variables, looked up only
+     *     for the paths which are substituted. If {@code config.override_with_env_vars} is enabled,
+     *     the overrides are instead {@link ConfigFactory#defaultOverrides()}, as the mapping of
+     *     environment variables to paths then depends on every variable.</li>
+     * <li>the options from {@value TypeSafeConfigurationFactory#CONFIG_CACHE_KEY},
+     *     {@value TypeSafeConfigurationFactory#PRUNE_ENVIRONMENTS_KEY}
+     *     and {@value TypeSafeConfigurationFactory#PRECOMPILED_CONFIG_KEY}</li>
+     * </ul>
+     * The environments and options may also be given with the property prefix, e.g. {@code -Ddw.env=local}.
+     *
+     * @param propertyPrefix the Dropwizard property prefix, with or without the trailing {@code '.'}.
+     */
+    public static ConfigurationBuildContext fromSystemProperties(String propertyPrefix) {
+        String prefix = propertyPrefix.endsWith(".") ? propertyPrefix : propertyPrefix + '.';
+        List<String> environments = firstAvailableSystemProperty(ENV_KEY, prefix + ENV_KEY)
+                .map(commaSeparatedEnvs -> Stream.of(commaSeparatedEnvs.split(",\\s?")).collect(toList()))
+                .orElse(List.of());
+        boolean overrideWithEnvVars = Boolean.getBoolean(OVERRIDE_WITH_ENV_VARS_KEY);
+        return new ConfigurationBuildContext(
+                environments,
+                firstAvailableSystemProperty(SECRET_KEY),
+                overrideWithEnvVars ? ConfigFactory.defaultOverrides() : ConfigFactory.empty(),
+                overrideWithEnvVars ? Optional.empty() : Optional.of(LazyOverridesResolver.SYSTEM_PROPERTIES_AND_ENVIRONMENT),
+                firstAvailableSystemProperty(CONFIG_CACHE_KEY, prefix + CONFIG_CACHE_KEY).map(Paths::get),
+                firstAvailableSystemProperty(PRUNE_ENVIRONMENTS_KEY, prefix + PRUNE_ENVIRONMENTS_KEY).filter(Boolean::parseBoolean).isPresent(),
+                firstAvailableSystemProperty(PRECOMPILED_CONFIG_KEY, prefix + PRECOMPILED_CONFIG_KEY).filter(Boolean::parseBoolean).isPresent());
+    }
+
+    /**
+     * Create a context for the given environments, without a secret config, without any
+     * overrides, and with the default options. In particular, unlike {@link #fromSystemProperties(String)},
+     * substitutions are not resolved from system properties unless given with {@link #withOverrides(Config)}.
+     *
+     * @param environments the active environments, where values of later environments override earlier.
+     */
+    public static ConfigurationBuildContext forEnvironments(String ... environments) {
+        return forEnvironments(List.of(environments));
+    }
+
+    /**
+     * @see #forEnvironments(String...)
+     */
+    public static ConfigurationBuildContext forEnvironments(List<String> environments) {
+        return new ConfigurationBuildContext(List.copyOf(environments), Optional.empty(), ConfigFactory.empty(), Optional.empty(), Optional.empty(), false, false);
+    }
+
+    private ConfigurationBuildContext(
+            List<String> environments, Optional<String> secretPath, Config overrides, Optional<ConfigResolver> overrideResolver,
+            Optional<Path> compiledConfigCache, boolean pruneEnvironments, boolean usePrecompiledConfig) {
+
+        this.environments = environments;
+        this.secretPath = secretPath;
+        this.overrides = overrides;
+        this.overrideResolver = overrideResolver;
+        this.compiledConfigCache = compiledConfigCache;
+        this.pruneEnvironments = pruneEnvironments;
+        this.usePrecompiledConfig = usePrecompiledConfig;
+    }
+
+    /**
+     * @param secretPath the path of a config to merge on top of the configuration,
+     *                   opened with the same source provider as the configuration.
+     */
+    public ConfigurationBuildContext withSecret(String secretPath) {
+        return new ConfigurationBuildContext(environments, Optional.of(secretPath), overrides, overrideResolver, compiledConfigCache, pruneEnvironments, usePrecompiledConfig);
+    }
+
+    /**
+     * @param overrides the config which substitutions in the configuration are resolved
+     *                  from first, e.g. {@link ConfigFactory#systemProperties()}.
+     */
+    public ConfigurationBuildContext withOverrides(Config overrides) {
+        return new ConfigurationBuildContext(environments, secretPath, overrides, overrideResolver, compiledConfigCache, pruneEnvironments, usePrecompiledConfig);
+    }
+
+    /**
+     * @param overrideResolver resolves the substitutions which are not found in the {@link #getOverrides() overrides},
+     *                         looking up each substituted path on demand. Replaces any resolver of this context,
+     *                         including the lookup of system properties and environment variables of
+     *                         {@link #fromSystemProperties(String)}.
+     */
+    public ConfigurationBuildContext withOverrideResolver(ConfigResolver overrideResolver) {
+        return new ConfigurationBuildContext(environments, secretPath, overrides, Optional.of(overrideResolver), compiledConfigCache, pruneEnvironments, usePrecompiledConfig);
+    }
+
+    /**
+     * @param cacheDirectory the directory of a persistent cache of the resolved configuration.
+     * @see TypeSafeConfigurationFactory#CONFIG_CACHE_KEY
+     */
+    public ConfigurationBuildContext withCompiledConfigCache(Path cacheDirectory) {
+        return new ConfigurationBuildContext(environments, secretPath, overrides, overrideResolver, Optional.of(cacheDirectory), pruneEnvironments, usePrecompiledConfig);
+    }
+
+    /**
+     * @see TypeSafeConfigurationFactory#PRUNE_ENVIRONMENTS_KEY
+     */
+    public ConfigurationBuildContext withEnvironmentPruning(boolean pruneEnvironments) {
+        return new ConfigurationBuildContext(environments, secretPath, overrides, overrideResolver, compiledConfigCache, pruneEnvironments, usePrecompiledConfig);
+    }
+
+    /**
+     * @see TypeSafeConfigurationFactory#PRECOMPILED_CONFIG_KEY
+     */
+    public ConfigurationBuildContext withPrecompiledConfig(boolean usePrecompiledConfig) {
+        return new ConfigurationBuildContext(environments, secretPath, overrides, overrideResolver, compiledConfigCache, pruneEnvironments, usePrecompiledConfig);
+    }
+
+    public List<String> getEnvironments() {
+        return environments;
+    }
+
+    public Optional<String> getSecretPath() {
+        return secretPath;
+    }
+
+    public Config getOverrides() {
+        return overrides;
+    }
+
+    public Optional<ConfigResolver> getOverrideResolver() {
+        return overrideResolver;
+    }
+
+    /**
+     * @return the override for a substituted path, rendered as a string, or {@code null} if
+     *         the path is not overridden.
+     */
+    String renderedOverride(String path) {
+        try {
+            ConfigValue override = overrides.hasPath(path) ? overrides.getValue(path) : overrideResolver.map(resolver -> resolver.lookup(path)).orElse(null);
+            return override != null ? override.render(ConfigRenderOptions.concise()) : null;
+        } catch (ConfigException.BadPath e) {
+            // not a valid path, and so it can not be overridden
+            return null;
+        }
+    }
+
+    public Optional<Path> getCompiledConfigCache() {
+        return compiledConfigCache;
+    }
+
+    public boolean isPruningEnvironments() {
+        return pruneEnvironments;
+    }
+
+    public boolean isUsingPrecompiledConfig() {
+        return usePrecompiledConfig;
+    }
+
+    /**
+     * @return whether a configuration built with the given context is the same as with this context,
+     *         given the same sources.
+     */
+    boolean hasSameInputsAs(ConfigurationBuildContext other) {
+        return environments.equals(other.environments) && secretPath.equals(other.secretPath)
+                && overrides.equals(other.overrides) && overrideResolver.equals(other.overrideResolver)
+                && compiledConfigCache.equals(other.compiledConfigCache) && pruneEnvironments == other.pruneEnvironments
+                && usePrecompiledConfig == other.usePrecompiledConfig;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[environments=" + environments + ", secret=" + secretPath.orElse("none") +
+               ", compiledConfigCache=" + compiledConfigCache.map(Path::toString).orElse("none") + ", pruneEnvironments=" + pruneEnvironments + ", usePrecompiledConfig=" + usePrecompiledConfig + "]";
+    }
+
+    private static Optional<String> firstAvailableSystemProperty(String ... propertyNames) {
+        return Stream.of(propertyNames)
+            .map(System::getProperty)
+            .filter(property -> property != null && !property.isEmpty())
+            .findFirst();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a phase of building a configuration, as
+ * described by {@link ConfigurationBuildTimings.Phase}.
+ */
+@Name("no.digipost.dropwizard.ConfigurationBuildPhase")
+@Label("Configuration Build Phase")
+@Description("A phase of building a Dropwizard configuration with TypeSafeConfigurationFactory")
+@Category({"Dropwizard", "Configuration"})
+@StackTrace(false)
+final class ConfigurationBuildPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Source")
+    @Description("The configuration source of the phase, if the phase is for a single source")
+    String source;
+
+    @Label("Size")
+    @Description("The size of the input to the phase, in the unit given by Size Unit")
+    long size;
+
+    @Label("Size Unit")
+    String sizeUnit;
+}
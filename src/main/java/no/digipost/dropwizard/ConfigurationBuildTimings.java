@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigList;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * The time spent in each phase of building a configuration with {@link TypeSafeConfigurationFactory},
+ * together with the size of the input to each phase. Every phase is also recorded as a
+ * {@link ConfigurationBuildPhaseEvent} for Java Flight Recorder.
+ */
+public final class ConfigurationBuildTimings {
+
+    public enum Phase {
+        /**
+         * Opening a configuration source. The size is the number of bytes read, if the source is read
+         * fully when opened, and otherwise 0.
+         */
+        OPEN("bytes"),
+
+        /**
+         * Parsing a configuration source. The size is the number of bytes parsed.
+         */
+        PARSE("bytes"),
+
+        /**
+         * Resolving substitutions. The size is the number of nodes in the config tree being resolved.
+         */
+        RESOLVE("nodes"),
+
+        /**
+         * Reducing a config tree to the active environments. The size is the number of nodes in the config tree being reduced.
+         */
+        REDUCE("nodes"),
+
+        /**
+         * Binding the config tree to the configuration class, including any validation. The size is the number of nodes bound.
+         */
+        BIND("nodes"),
+
+        /**
+         * Validating the bound configuration. The size is the number of nodes bound to the validated configuration.
+         */
+        VALIDATE("nodes");
+
+        public final String sizeUnit;
+
+        Phase(String sizeUnit) {
+            this.sizeUnit = sizeUnit;
+        }
+    }
+
+    public static final class PhaseTiming {
+        public final Phase phase;
+        public final String source;
+        public final Duration duration;
+        public final long size;
+
+        PhaseTiming(Phase phase, String source, Duration duration, long size) {
+            this.phase = phase;
+            this.source = source;
+            this.duration = duration;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return phase + (source != null ? " " + source : "") + ": " + duration.toMillis() + " ms, " + size + " " + phase.sizeUnit;
+        }
+    }
+
+    @FunctionalInterface
+    interface TimedPhase<R, E extends Exception> {
+        R run() throws E;
+    }
+
+    private final Queue<PhaseTiming> phaseTimings = new ConcurrentLinkedQueue<>();
+
+    ConfigurationBuildTimings() {
+    }
+
+    /**
+     * @return the timing of every phase in the order they completed. Phases for different
+     *         sources may have run concurrently, and the {@link Phase#BIND bind} phase
+     *         includes the {@link Phase#VALIDATE validate} phase.
+     */
+    public List<PhaseTiming> getPhaseTimings() {
+        return List.copyOf(phaseTimings);
+    }
+
+    /**
+     * @return the total time spent in the given phase, for all sources.
+     */
+    public Duration getTotal(Phase phase) {
+        return phaseTimings.stream().filter(timing -> timing.phase == phase).map(timing -> timing.duration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    /**
+     * @return the total time spent in every phase, for all sources. The {@link Phase#VALIDATE validate} phase
+     *         is not counted separately, as it is included in the {@link Phase#BIND bind} phase.
+     */
+    public Duration getTotal() {
+        return phaseTimings.stream().filter(timing -> timing.phase != Phase.VALIDATE).map(timing -> timing.duration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    <R, E extends Exception> R time(Phase phase, String source, long size, TimedPhase<R, E> timedPhase) throws E {
+        return time(phase, source, timedPhase, result -> size);
+    }
+
+    <R, E extends Exception> R time(Phase phase, String source, TimedPhase<R, E> timedPhase, ToLongFunction<? super R> size) throws E {
+        PhaseTimer timer = start(phase, source);
+        R result = timedPhase.run();
+        timer.stop(size.applyAsLong(result));
+        return result;
+    }
+
+    /**
+     * Start timing a phase, for phases which can not be expressed as a {@link TimedPhase}.
+     * The phase is only recorded if it is {@link PhaseTimer#stop(long) stopped}.
+     */
+    PhaseTimer start(Phase phase, String source) {
+        return new PhaseTimer(phase, source);
+    }
+
+    final class PhaseTimer {
+        private final Phase phase;
+        private final String source;
+        private final ConfigurationBuildPhaseEvent event;
+        private final long start;
+
+        private PhaseTimer(Phase phase, String source) {
+            this.phase = phase;
+            this.source = source;
+            this.event = new ConfigurationBuildPhaseEvent();
+            event.begin();
+            this.start = System.nanoTime();
+        }
+
+        void stop(long size) {
+            long nanos = System.nanoTime() - start;
+            event.end();
+            phaseTimings.add(new PhaseTiming(phase, source, Duration.ofNanos(nanos), size));
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.source = source;
+                event.size = size;
+                event.sizeUnit = phase.sizeUnit;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Count the nodes of a config tree, which may be unresolved. Unresolved values are
+     * counted as one node, without asking for their type, which would fail.
+     */
+    static long nodesIn(ConfigValue value) {
+        long nodes = 1;
+        try {
+            if (value instanceof ConfigObject) {
+                for (ConfigValue field : ((ConfigObject) value).values()) {
+                    nodes += nodesIn(field);
+                }
+            } else if (value instanceof ConfigList) {
+                for (ConfigValue element : (ConfigList) value) {
+                    nodes += nodesIn(element);
+                }
+            }
+        } catch (ConfigException.NotResolved e) {
+            // a merge of unresolved objects, which content is not known until resolved
+        }
+        return nodes;
+    }
+
+    static long nodesIn(JsonNode node) {
+        long nodes = 1;
+        for (JsonNode child : node) {
+            nodes += nodesIn(child);
+        }
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + phaseTimings;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import java.util.Set;
+
+/**
+ * Listener for changes to a part of a {@link ReloadingConfiguration}.
+ *
+ * @param <T> The type of config object
+ * @see ReloadingConfiguration#onChange(String, ConfigurationChangeListener)
+ */
+@FunctionalInterface
+public interface ConfigurationChangeListener<T> {
+
+    /**
+     * @param configuration the reloaded configuration
+     * @param changedPaths the changed paths which are within, or contain, the path the listener is registered for
+     */
+    void configurationChanged(T configuration, Set<String> changedPaths);
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Precompiles a configuration file for one or more sets of environments at build time, so that
+ * building the configuration at runtime can skip parsing the file, except for the few values which
+ * contain substitutions.
+ * The precompiled artifacts are written next to where the configuration is found at runtime, and are
+ * used when {@link TypeSafeConfigurationFactory#PRECOMPILED_CONFIG_KEY enabled}, and only if the
+ * configuration file is unchanged.
+ * <p>
+ * Only parsing is moved to build time. Nothing is resolved, reduced to the environments, bound or
+ * validated when precompiling, as the secret config and the overrides are not known until runtime,
+ * and so the configuration file is still read and digested, and the whole config tree is reduced,
+ * resolved, bound and validated as usual at runtime. Precompiling only fails on a configuration file
+ * which does not parse, or which includes other sources.
+ * <p>
+ * Run with the configuration file, the output directory, and the environments to precompile for,
+ * where each argument is a comma separated list of environments, as given to {@code -Denv}, e.g. with the
+ * exec-maven-plugin in the {@code process-classes} phase:
+ * <pre>
+ * java no.digipost.dropwizard.ConfigurationPrecompiler src/main/resources/config.yml target/classes local test prod,prod-eu
+ * </pre>
+ */
+public final class ConfigurationPrecompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationPrecompiler.class);
+
+    public static void main(String ... args) throws IOException {
+        if (args.length < 3) {
+            throw new IllegalArgumentException(
+                    "Usage: " + ConfigurationPrecompiler.class.getName() + " <configuration file> <output directory> <environments>...");
+        }
+        for (int i = 2; i < args.length; i++) {
+            List<String> environments = Stream.of(args[i].split(",\\s?")).collect(toList());
+            Path artifact = precompile(Paths.get(args[0]), Paths.get(args[1]), environments);
+            log.info("Precompiled {} for environments {} to {}", args[0], environments, artifact);
+        }
+    }
+
+    /**
+     * Precompile a configuration file for a set of environments.
+     *
+     * @param configFile the configuration file, in either .conf or .yml format.
+     * @param outputDirectory the directory to write the precompiled artifact to.
+     * @param environments the active environments, where values of later environments override earlier.
+     * @return the written artifact.
+     */
+    public static Path precompile(Path configFile, Path outputDirectory, List<String> environments) throws IOException {
+        String fileName = configFile.getFileName().toString();
+        byte[] source = Files.readAllBytes(configFile);
+        Config parsed = TypeSafeConfigurationFactory.parse(source, fileName);
+        if (IncludingSourceLoader.mayInclude(source, fileName)) {
+            IncludingSourceLoader loader = new IncludingSourceLoader(new FileConfigurationSourceProvider(), null, new ConfigurationBuildTimings());
+            loader.load(configFile.toString());
+            if (loader.loadedPaths().size() > 1) {
+                throw new IllegalArgumentException(
+                        "Unable to precompile " + configFile + ", because it includes other sources, " +
+                        "and a precompiled configuration is only validated against the configuration file itself");
+            }
+        }
+        boolean refersToEnvironments = CompiledConfigCache.substitutionsIn(new String(source, UTF_8)).stream()
+                .anyMatch(substitution -> substitution.startsWith(TypeSafeConfigurationFactory.ENVIRONMENTS_CONFIG_KEY));
+        if (!refersToEnvironments) {
+            parsed = TypeSafeConfigurationFactory.pruneEnvironments(parsed, TypeSafeConfigurationFactory.environmentKeys(environments));
+        }
+        Files.createDirectories(outputDirectory);
+        return Files.write(outputDirectory.resolve(PrecompiledConfig.artifactPath(fileName, environments)),
+                PrecompiledConfig.write(source, environments, parsed));
+    }
+
+    private ConfigurationPrecompiler() {
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import io.dropwizard.configuration.ConfigurationException;
+
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The outcome of building and validating the configuration for every environment,
+ * as done by {@link TypeSafeConfigurationFactory#validateAllEnvironments(io.dropwizard.configuration.ConfigurationSourceProvider, String)}.
+ */
+public final class EnvironmentsValidationReport {
+
+    public static final class EnvironmentResult {
+        private final String environment;
+        private final Exception failure;
+        private final ConfigurationBuildTimings timings;
+
+        EnvironmentResult(String environment, Exception failure, ConfigurationBuildTimings timings) {
+            this.environment = environment;
+            this.failure = failure;
+            this.timings = timings;
+        }
+
+        public String getEnvironment() {
+            return environment;
+        }
+
+        public boolean isValid() {
+            return failure == null;
+        }
+
+        /**
+         * @return the exception which caused building the configuration for the environment to fail.
+         */
+        public Optional<Exception> getFailure() {
+            return Optional.ofNullable(failure);
+        }
+
+        /**
+         * @return the errors of the configuration for the environment, e.g. every constraint violation,
+         *         or an empty list if it is valid.
+         */
+        public List<String> getErrors() {
+            if (failure == null) {
+                return List.of();
+            } else if (failure instanceof ConfigurationException) {
+                return List.copyOf(((ConfigurationException) failure).getErrors());
+            } else {
+                return List.of(failure.getClass().getSimpleName() + ": " + failure.getMessage());
+            }
+        }
+
+        /**
+         * @return the time spent building the configuration for the environment, after the sources
+         *         were loaded.
+         */
+        public ConfigurationBuildTimings getTimings() {
+            return timings;
+        }
+
+        @Override
+        public String toString() {
+            return environment + ": " + (isValid() ? "valid" : "invalid, " + String.join(", ", getErrors()));
+        }
+    }
+
+    private final String path;
+    private final List<EnvironmentResult> results;
+    private final ConfigurationBuildTimings sharedTimings;
+
+    EnvironmentsValidationReport(String path, List<EnvironmentResult> results, ConfigurationBuildTimings sharedTimings) {
+        this.path = path;
+        this.results = List.copyOf(results);
+        this.sharedTimings = sharedTimings;
+    }
+
+    public boolean isValid() {
+        return results.stream().allMatch(EnvironmentResult::isValid);
+    }
+
+    public List<EnvironmentResult> getResults() {
+        return results;
+    }
+
+    public List<EnvironmentResult> getInvalid() {
+        return results.stream().filter(result -> !result.isValid()).collect(toList());
+    }
+
+    /**
+     * @return the time spent loading the sources and resolving overrides, which is shared by every environment.
+     */
+    public ConfigurationBuildTimings getSharedTimings() {
+        return sharedTimings;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Configuration ").append(path).append(" is ")
+                .append(isValid() ? "valid" : "invalid").append(" for ").append(results.size()).append(" environments");
+        for (EnvironmentResult result : results) {
+            report.append(System.lineSeparator()).append("  ").append(result.getEnvironment()).append(": ");
+            if (result.isValid()) {
+                report.append("valid");
+            } else {
+                report.append("invalid");
+                for (String error : result.getErrors()) {
+                    report.append(System.lineSeparator()).append("    ").append(error.strip().replace("\n", System.lineSeparator() + "    "));
+                }
+            }
+            report.append(" (").append(result.getTimings().getTotal().toMillis()).append(" ms)");
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigIncludeContext;
+import com.typesafe.config.ConfigIncluder;
+import com.typesafe.config.ConfigList;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigOriginFactory;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueType;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import no.digipost.dropwizard.configuration.ByteBufferInputStream;
+import no.digipost.dropwizard.configuration.ConfigurationSourceNotFoundException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.OPEN;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.PARSE;
+
+/**
+ * Loads a configuration source, and every source it includes, through a {@link ConfigurationSourceProvider}.
+ * <p>
+ * A .yml source includes other sources with an {@value #INCLUDE_KEY} key in any object, with a path, or a list of paths,
+ * where the keys of the including object override the keys of the included sources, and later included sources
+ * override earlier. Only objects which are present in both are merged, and any other value replaces the included value.
+ * A .conf source includes other sources with the usual unqualified {@code include "path"} statements of HOCON, and
+ * {@code include required("path")} fails if the source is not found. As with Typesafe Config, a .conf source may include
+ * a path without an extension, which includes every source found with the extensions .conf, .json and .properties,
+ * where .conf overrides .json, which overrides .properties, while a path with any of these extensions, or with the .yml
+ * extension, includes only that source. Qualified includes, i.e. {@code include file(..)}, {@code classpath(..)} and
+ * {@code url(..)}, are handled by Typesafe Config as usual.
+ * Either kind of source may include the other kind, and relative paths are relative to the including source.
+ * <p>
+ * One loader should be used for every source of a build, e.g. both the main and the secret config, so that
+ * a source included by several of them is loaded and parsed only once.
+ * <p>
+ * The includes of a source are found when it is loaded, and are then loaded concurrently, before the source is
+ * expanded with them. The includes of a .conf source are found by parsing it with an includer which only records
+ * the included paths, so that {@code include} in comments and string values is not mistaken for an include,
+ * and a .conf source which does not include any other source is only parsed once. A source included from several places is loaded and parsed only once, and any cycle of
+ * includes fails with a {@link ConfigException.Parse} listing the sources in the cycle.
+ * <p>
+ * Parsed sources are reused from {@link ParsedSourceCache#shared}, except .conf sources which include other
+ * sources, as these are expanded while they are parsed.
+ */
+final class IncludingSourceLoader {
+
+    static final String INCLUDE_KEY = "$include";
+
+    private static final Pattern HOCON_INCLUDE_KEYWORD = Pattern.compile("\\binclude\\b");
+    private static final List<String> INCLUDED_EXTENSIONS = List.of(".conf", ".json", ".properties");
+
+    private final ConfigurationSourceProvider sourceProvider;
+    private final Set<String> keptEnvironments;
+    private final ConfigurationBuildTimings timings;
+    private final ConcurrentMap<String, CompletableFuture<Source>> loaded = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Config> expanded = new ConcurrentHashMap<>();
+
+    /**
+     * @param keptEnvironments the environments to keep when parsing every source, or {@code null} to keep all.
+     */
+    IncludingSourceLoader(ConfigurationSourceProvider sourceProvider, Set<String> keptEnvironments, ConfigurationBuildTimings timings) {
+        this.sourceProvider = sourceProvider;
+        this.keptEnvironments = keptEnvironments;
+        this.timings = timings;
+    }
+
+    /**
+     * Load a source, expanded with every source it includes.
+     */
+    Config load(String path) {
+        return expand(path, List.of());
+    }
+
+    /**
+     * @return the paths of every source loaded by this loader, including the sources given to {@link #load(String)}.
+     */
+    Set<String> loadedPaths() {
+        return Set.copyOf(loaded.keySet());
+    }
+
+    /**
+     * @return whether the given content possibly includes other sources, i.e. it contains
+     *         the key or statement used to include sources in its format.
+     */
+    static boolean mayInclude(byte[] content, String path) {
+        String text = new String(content, UTF_8);
+        return TypeSafeConfigurationFactory.isYaml(path) ? text.contains(INCLUDE_KEY) : HOCON_INCLUDE_KEYWORD.matcher(text).find();
+    }
+
+    /**
+     * @return the path of an included source, relative to the including source unless it is absolute.
+     */
+    static String resolve(String includingPath, String includedPath) {
+        if (includedPath.startsWith("/") || includedPath.contains("://")) {
+            return includedPath;
+        }
+        int directoryEnd = includingPath.lastIndexOf('/') + 1;
+        return includingPath.substring(0, directoryEnd) + includedPath;
+    }
+
+    private Config expand(String path, List<String> including) {
+        if (including.contains(path)) {
+            List<String> cycle = new ArrayList<>(including.subList(including.indexOf(path), including.size()));
+            cycle.add(path);
+            throw new ConfigException.Parse(ConfigOriginFactory.newSimple(including.get(including.size() - 1)),
+                    "Include cycle: " + String.join(" -> ", cycle));
+        }
+        Config alreadyExpanded = expanded.get(path);
+        if (alreadyExpanded != null) {
+            return alreadyExpanded;
+        }
+        List<String> includingSource = new ArrayList<>(including);
+        includingSource.add(path);
+        Source source = ConcurrentSourceLoading.join(loadAsync(path));
+        Config config;
+        if (source.parsed == null) {
+            config = parseIncluding(source, includingSource);
+        } else if (source.includes.isEmpty()) {
+            config = source.parsed;
+        } else {
+            config = expandIncludes(source.parsed.root(), path, includingSource).toConfig();
+        }
+        Config concurrentlyExpanded = expanded.putIfAbsent(path, config);
+        return concurrentlyExpanded != null ? concurrentlyExpanded : config;
+    }
+
+    private CompletableFuture<Source> loadAsync(String path) {
+        return loaded.computeIfAbsent(path, p -> ConcurrentSourceLoading.supplyAsync(() -> read(p)));
+    }
+
+    /**
+     * Read a source, parse it unless it is a .conf source with includes, and start loading its includes.
+     */
+    private Source read(String path) {
+        Optional<ParsedSourceCache.FileStamp> stamp = ParsedSourceCache.fileStamp(sourceProvider, path);
+        if (stamp.isPresent()) {
+            Optional<Config> unmodified = ParsedSourceCache.shared.get(path, keptEnvironments, stamp.get());
+            if (unmodified.isPresent()) {
+                return parsed(path, unmodified.get());
+            }
+        }
+        try {
+            ByteBuffer content = timings.time(OPEN, path, () -> {
+                try (InputStream opened = sourceProvider.open(path)) {
+                    if (opened == null) {
+                        throw new ConfigurationSourceNotFoundException("Configuration source " + path + " not found", null);
+                    }
+                    return opened instanceof ByteBufferInputStream ? ((ByteBufferInputStream) opened).buffer() : ByteBuffer.wrap(opened.readAllBytes());
+                }
+            }, ByteBuffer::remaining);
+            byte[] contentDigest = ParsedSourceCache.digest(content);
+            Optional<Config> sameContent = ParsedSourceCache.shared.get(path, keptEnvironments, contentDigest);
+            if (sameContent.isPresent()) {
+                return parsed(path, sameContent.get());
+            }
+            if (!TypeSafeConfigurationFactory.isYaml(path)) {
+                RecordingIncluder includer = new RecordingIncluder();
+                Config parsed = timings.time(PARSE, path, content.remaining(),
+                        () -> TypeSafeConfigurationFactory.parse(UTF_8.decode(content.duplicate()), path, keptEnvironments, includer));
+                if (includer.includes.isEmpty()) {
+                    ParsedSourceCache.shared.put(path, keptEnvironments, stamp.orElse(null), contentDigest, parsed);
+                    return parsed(path, parsed);
+                }
+                includer.includes.forEach(includedPath -> includedPaths(includedPath).forEach(candidate -> loadAsync(resolve(path, candidate))));
+                return new Source(path, null, includer.includes, content, stamp.orElse(null), contentDigest);
+            }
+            Config parsed = timings.time(PARSE, path, content.remaining(),
+                    () -> TypeSafeConfigurationFactory.parse(UTF_8.decode(content), path, keptEnvironments, null));
+            ParsedSourceCache.shared.put(path, keptEnvironments, stamp.orElse(null), contentDigest, parsed);
+            return parsed(path, parsed);
+        } catch (IOException e) {
+            String message = "Unable to load config from '" + path + "', because " + e.getClass().getSimpleName() + ": '" + e.getMessage() + "'";
+            throw isNotFound(e) ? new SourceNotFound(path, message, e) : new RuntimeException(message, e);
+        }
+    }
+
+    private static boolean isNotFound(IOException e) {
+        return e instanceof ConfigurationSourceNotFoundException || e instanceof FileNotFoundException || e instanceof NoSuchFileException;
+    }
+
+    private Source parsed(String path, Config parsed) {
+        List<String> includes = new ArrayList<>();
+        if (TypeSafeConfigurationFactory.isYaml(path)) {
+            collectIncludes(parsed.root(), includes);
+        }
+        includes.forEach(includedPath -> loadAsync(resolve(path, includedPath)));
+        return new Source(path, parsed, includes, null, null, null);
+    }
+
+    /**
+     * Parse a .conf source, expanding its includes as they are encountered by the parser.
+     */
+    private Config parseIncluding(Source source, List<String> including) {
+        ProviderIncluder includer = new ProviderIncluder(source.path, including);
+        try {
+            Config parsed = timings.time(PARSE, source.path, source.content.remaining(),
+                    () -> TypeSafeConfigurationFactory.parse(UTF_8.decode(source.content.duplicate()), source.path, keptEnvironments, includer));
+            if (!includer.included) {
+                ParsedSourceCache.shared.put(source.path, keptEnvironments, source.stamp, source.contentDigest, parsed);
+            }
+            return parsed;
+        } catch (IOException e) {
+            throw new RuntimeException(
+                    "Unable to load config from '" + source.path + "', because " +
+                    e.getClass().getSimpleName() + ": '" + e.getMessage() + "'", e);
+        }
+    }
+
+    private ConfigObject expandIncludes(ConfigObject object, String path, List<String> including) {
+        ConfigObject expandedObject = object;
+        for (Map.Entry<String, ConfigValue> field : object.entrySet()) {
+            if (field.getValue() instanceof ConfigObject) {
+                ConfigObject child = (ConfigObject) field.getValue();
+                ConfigObject expandedChild = expandIncludes(child, path, including);
+                if (expandedChild != child) {
+                    expandedObject = expandedObject.withValue(field.getKey(), expandedChild);
+                }
+            }
+        }
+        ConfigValue include = object.get(INCLUDE_KEY);
+        if (include == null) {
+            return expandedObject;
+        }
+        expandedObject = expandedObject.withoutKey(INCLUDE_KEY);
+        ConfigObject included = null;
+        for (String includedPath : includePaths(include)) {
+            ConfigObject includedObject = expand(resolve(path, includedPath), including).root();
+            included = included == null ? includedObject : mergeOver(includedObject, included);
+        }
+        return mergeOver(expandedObject, included).withOrigin(object.origin());
+    }
+
+    /**
+     * Merge an object over another, where only objects present in both are merged, and any other
+     * value replaces the value of the other object. Unlike {@link ConfigObject#withFallback(com.typesafe.config.ConfigMergeable)},
+     * this does not make a value with substitutions a delayed merge with the value it replaces, which
+     * can not be resolved with the overrides of a build.
+     */
+    private static ConfigObject mergeOver(ConfigObject object, ConfigObject other) {
+        ConfigObject merged = other;
+        try {
+            for (Map.Entry<String, ConfigValue> field : object.entrySet()) {
+                ConfigValue value = field.getValue();
+                ConfigValue otherValue = other.get(field.getKey());
+                if (value instanceof ConfigObject && otherValue instanceof ConfigObject) {
+                    value = mergeOver((ConfigObject) value, (ConfigObject) otherValue);
+                }
+                merged = merged.withValue(field.getKey(), value);
+            }
+        } catch (ConfigException.NotResolved e) {
+            return object.withFallback(other);
+        }
+        return merged;
+    }
+
+    private static List<String> includePaths(ConfigValue include) {
+        List<String> paths = new ArrayList<>();
+        if (include.valueType() == ConfigValueType.STRING) {
+            paths.add((String) include.unwrapped());
+        } else if (include.valueType() == ConfigValueType.LIST) {
+            for (ConfigValue element : (ConfigList) include) {
+                if (element.valueType() != ConfigValueType.STRING) {
+                    throw new ConfigException.BadValue(element.origin(), INCLUDE_KEY, "must be a path, or a list of paths, but contains " + element.valueType());
+                }
+                paths.add((String) element.unwrapped());
+            }
+        } else {
+            throw new ConfigException.BadValue(include.origin(), INCLUDE_KEY, "must be a path, or a list of paths, but was " + include.valueType());
+        }
+        return paths;
+    }
+
+    /**
+     * @return the paths a .conf source includes with the given path, i.e. the path with each of the extensions
+     *         tried by Typesafe Config, if it has no extension, or the path itself.
+     */
+    static List<String> includedPaths(String includedPath) {
+        if (includedPath.endsWith(".yml") || INCLUDED_EXTENSIONS.stream().anyMatch(includedPath::endsWith)) {
+            return List.of(includedPath);
+        }
+        return INCLUDED_EXTENSIONS.stream().map(extension -> includedPath + extension).collect(toList());
+    }
+
+    private static void collectIncludes(ConfigObject object, List<String> includes) {
+        for (Map.Entry<String, ConfigValue> field : object.entrySet()) {
+            if (field.getKey().equals(INCLUDE_KEY)) {
+                includes.addAll(includePaths(field.getValue()));
+            } else if (field.getValue() instanceof ConfigObject) {
+                collectIncludes((ConfigObject) field.getValue(), includes);
+            }
+        }
+    }
+
+    private final class ProviderIncluder implements ConfigIncluder {
+        private final String includingPath;
+        private final List<String> including;
+        volatile boolean included;
+
+        ProviderIncluder(String includingPath, List<String> including) {
+            this.includingPath = includingPath;
+            this.including = including;
+        }
+
+        @Override
+        public ConfigIncluder withFallback(ConfigIncluder fallback) {
+            return this;
+        }
+
+        @Override
+        public ConfigObject include(ConfigIncludeContext context, String what) {
+            included = true;
+            ConfigObject merged = null;
+            List<String> paths = includedPaths(resolve(includingPath, what));
+            for (String path : paths) {
+                Optional<ConfigObject> includedObject = expandIfFound(path);
+                if (includedObject.isPresent()) {
+                    merged = merged == null ? includedObject.get() : merged.withFallback(includedObject.get());
+                }
+            }
+            if (merged != null) {
+                return merged;
+            } else if (context.parseOptions().getAllowMissing()) {
+                return ConfigFactory.empty(paths.get(0)).root();
+            }
+            throw new ConfigException.IO(ConfigOriginFactory.newSimple(includingPath),
+                    "Included source " + what + " not found" + (paths.size() > 1 ? ", as any of " + String.join(", ", paths) : ""));
+        }
+
+        /**
+         * @return the expanded source, or empty if the source itself is not found. Any other failure,
+         *         including a source not found which is included by the source, is thrown.
+         */
+        private Optional<ConfigObject> expandIfFound(String path) {
+            try {
+                return Optional.of(expand(path, including).root());
+            } catch (SourceNotFound e) {
+                if (e.path.equals(path)) {
+                    return Optional.empty();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Records the paths of the unqualified includes of a .conf source, without including anything.
+     */
+    private static final class RecordingIncluder implements ConfigIncluder {
+        final List<String> includes = new ArrayList<>();
+
+        @Override
+        public ConfigIncluder withFallback(ConfigIncluder fallback) {
+            return this;
+        }
+
+        @Override
+        public ConfigObject include(ConfigIncludeContext context, String what) {
+            includes.add(what);
+            return ConfigFactory.empty().root();
+        }
+    }
+
+    /**
+     * Thrown when a source is not found by the source provider, as opposed to failing to read it.
+     */
+    private static final class SourceNotFound extends RuntimeException {
+        final String path;
+
+        SourceNotFound(String path, String message, IOException cause) {
+            super(message, cause);
+            this.path = path;
+        }
+    }
+
+    private static final class Source {
+        final String path;
+        final Config parsed;
+        final List<String> includes;
+        final ByteBuffer content;
+        final ParsedSourceCache.FileStamp stamp;
+        final byte[] contentDigest;
+
+        /**
+         * @param parsed the parsed source, or {@code null} for a .conf source, which is parsed with its includes.
+         */
+        Source(String path, Config parsed, List<String> includes, ByteBuffer content, ParsedSourceCache.FileStamp stamp, byte[] contentDigest) {
+            this.path = path;
+            this.parsed = parsed;
+            this.includes = includes;
+            this.content = content;
+            this.stamp = stamp;
+            this.contentDigest = contentDigest;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.configuration.ConfigurationValidationException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A section of a configuration which is bound and validated when it is first accessed, instead of
+ * when the configuration is built. Declare a field of the configuration class as e.g.
+ * {@code Lazy<LookupTables> lookupTables}, and the resolved config of the section is kept as-is until
+ * {@link #get()} is called. Sections of features which are not in use are then never bound.
+ * <p>
+ * Binding is done at most once, and is thread-safe. If binding or validation fails,
+ * the same exception is thrown every time the section is accessed.
+ * Lazy sections are supported by configurations built by {@link TypeSafeConfigurationFactory}.
+ *
+ * @param <T> The type of the config section
+ */
+public final class Lazy<T> implements Supplier<T> {
+
+    private final String path;
+    private final JavaType type;
+    private final ObjectMapper mapper;
+    private final Validator validator;
+    private JsonNode config;
+    private volatile T value;
+    private volatile CannotBindLazyConfiguration failure;
+
+    Lazy(String path, JavaType type, JsonNode config, ObjectMapper mapper, Validator validator) {
+        this.path = path;
+        this.type = type;
+        this.config = config;
+        this.mapper = mapper;
+        this.validator = validator;
+    }
+
+    /**
+     * @return the bound and validated config section.
+     * @throws CannotBindLazyConfiguration if the section can not be bound, or is invalid.
+     */
+    @Override
+    public T get() {
+        T bound = value;
+        if (bound == null) {
+            synchronized (this) {
+                if (value == null) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    value = bind();
+                }
+                bound = value;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * @return whether the section has been bound, i.e. successfully {@link #get() accessed}.
+     */
+    public boolean isBound() {
+        return value != null;
+    }
+
+    private T bind() {
+        try {
+            T bound = mapper.readerFor(type).readValue(config);
+            Set<ConstraintViolation<T>> violations = validator.validate(bound);
+            if (!violations.isEmpty()) {
+                throw new ConfigurationValidationException(path, violations);
+            }
+            config = null;
+            return bound;
+        } catch (IOException | ConfigurationValidationException | RuntimeException e) {
+            failure = new CannotBindLazyConfiguration(path, e);
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the config of the section as it is before binding, or the bound section if already bound.
+     */
+    synchronized Object unbound() {
+        return value != null ? value : config;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + path + (isBound() ? ", bound" : "") + "]";
+    }
+
+    public static class CannotBindLazyConfiguration extends RuntimeException {
+        CannotBindLazyConfiguration(String path, Exception cause) {
+            super("Unable to bind the configuration at '" + path + "', because " +
+                  cause.getClass().getSimpleName() + ": '" + cause.getMessage() + "'", cause);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.Deserializers;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import jakarta.validation.Validator;
+
+import java.io.IOException;
+
+/**
+ * Binds fields of type {@link Lazy} by keeping the config of the field as a tree,
+ * which is bound with the {@link ObjectMapper} this module is registered with when accessed.
+ */
+final class LazyModule extends SimpleModule {
+
+    private final Validator validator;
+
+    LazyModule(Validator validator) {
+        super(LazyModule.class.getSimpleName());
+        this.validator = validator;
+        addSerializer(new LazySerializer());
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        ObjectMapper mapper = context.getOwner();
+        context.addDeserializers(new Deserializers.Base() {
+            @Override
+            public JsonDeserializer<?> findBeanDeserializer(JavaType type, DeserializationConfig config, BeanDescription beanDesc) {
+                return type.hasRawClass(Lazy.class) ? new LazyDeserializer(type, mapper, validator) : null;
+            }
+        });
+    }
+
+    private static final class LazyDeserializer extends StdDeserializer<Lazy<?>> {
+        private final JavaType sectionType;
+        private final transient ObjectMapper mapper;
+        private final transient Validator validator;
+
+        LazyDeserializer(JavaType lazyType, ObjectMapper mapper, Validator validator) {
+            super(lazyType);
+            this.sectionType = lazyType.containedTypeOrUnknown(0);
+            this.mapper = mapper;
+            this.validator = validator;
+        }
+
+        @Override
+        public Lazy<?> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String path = p.getParsingContext().pathAsPointer().toString();
+            return new Lazy<>(path, sectionType, ctxt.readTree(p), mapper, validator);
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final class LazySerializer extends StdSerializer<Lazy> {
+        LazySerializer() {
+            super(Lazy.class);
+        }
+
+        @Override
+        public void serialize(Lazy value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            provider.defaultSerializeValue(value.unbound(), gen);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigResolver;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueFactory;
+
+import java.util.Map;
+
+/**
+ * Resolves substitutions from system properties, and then environment variables, looking up only
+ * the paths which are actually substituted, instead of turning every system property and
+ * environment variable into a config tree. The result is the same as resolving against
+ * {@link ConfigFactory#systemProperties()}, with environment variables as fallback.
+ * <p>
+ * Properties and variables are read when looked up, so changes to system properties are
+ * seen by later resolves.
+ */
+final class LazyOverridesResolver implements ConfigResolver {
+
+    static final LazyOverridesResolver SYSTEM_PROPERTIES_AND_ENVIRONMENT = new LazyOverridesResolver();
+
+    private LazyOverridesResolver() {
+    }
+
+    @Override
+    public ConfigValue lookup(String path) {
+        String name = String.join(".", ConfigUtil.splitPath(path));
+        if (hasChildren(System.getProperties(), name)) {
+            // e.g. both a.b and a.c for ${a}, which are merged into an object
+            return ConfigFactory.systemProperties().getValue(path);
+        }
+        String property = System.getProperty(name);
+        if (property != null) {
+            return ConfigValueFactory.fromAnyRef(property, "system property " + name);
+        }
+        Map<String, String> environment = System.getenv();
+        if (hasChildren(environment, name)) {
+            return ConfigFactory.systemEnvironment().getValue(path);
+        }
+        String variable = environment.get(name);
+        return variable != null ? ConfigValueFactory.fromAnyRef(variable, "env variable " + name) : null;
+    }
+
+    private static boolean hasChildren(Map<?, ?> source, String name) {
+        for (Object key : source.keySet()) {
+            if (key instanceof String && ((String) key).length() > name.length() + 1
+                    && ((String) key).startsWith(name) && ((String) key).charAt(name.length()) == '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public ConfigResolver withFallback(ConfigResolver fallback) {
+        return new WithFallback(this, fallback);
+    }
+
+    private static final class WithFallback implements ConfigResolver {
+        private final ConfigResolver first;
+        private final ConfigResolver fallback;
+
+        WithFallback(ConfigResolver first, ConfigResolver fallback) {
+            this.first = first;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public ConfigValue lookup(String path) {
+            ConfigValue value = first.lookup(path);
+            return value != null ? value : fallback.lookup(path);
+        }
+
+        @Override
+        public ConfigResolver withFallback(ConfigResolver fallback) {
+            return new WithFallback(this, fallback);
+        }
+    }
+}
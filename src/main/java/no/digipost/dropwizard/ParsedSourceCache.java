@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import no.digipost.dropwizard.configuration.FileChannelConfigurationSourceProvider;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A bounded cache of parsed, unresolved configuration sources, shared by every build in the JVM,
+ * evicting the least recently used source when full. Parsed config trees are immutable, so building
+ * the same sources again, e.g. for other environments, or in a test suite, can reuse them.
+ * <p>
+ * Sources are cached by their path, regardless of the provider they are read from, and a cached
+ * source is only used if its content is the same as when it was parsed, which is validated by a
+ * digest of the content. Sources read by a provider of plain files are
+ * instead validated by the last modified time and size of the file, which avoids reading the file
+ * at all if it is unchanged, but only if the file was last modified at least
+ * {@value #MODIFIED_TIME_GRANULARITY_MILLIS} ms before it was parsed. An edit to a file modified
+ * more recently than that may not change its modified time, as file systems only record it with a
+ * limited granularity, and such a file is always validated by its content.
+ */
+final class ParsedSourceCache {
+
+    static final String MAX_SIZE_KEY = "parsedSourceCacheSize";
+
+    static final ParsedSourceCache shared = new ParsedSourceCache(Integer.getInteger(MAX_SIZE_KEY, 64));
+
+    /**
+     * The coarsest granularity of the last modified time of files in common file systems, i.e. FAT.
+     */
+    static final long MODIFIED_TIME_GRANULARITY_MILLIS = 2000;
+
+    private final int maxSize;
+    private final Map<Key, Entry> entries;
+
+    ParsedSourceCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > ParsedSourceCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the last modified time and size of the file a source is read from, if the given provider
+     *         reads plain files, or empty if the source can only be validated by its content.
+     */
+    static Optional<FileStamp> fileStamp(ConfigurationSourceProvider sourceProvider, String path) {
+        if (!readsPlainFiles(sourceProvider)) {
+            return Optional.empty();
+        }
+        try {
+            long takenMillis = System.currentTimeMillis();
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+            return attributes.isRegularFile()
+                    ? Optional.of(new FileStamp(attributes.lastModifiedTime().toMillis(), attributes.size(), takenMillis))
+                    : Optional.empty();
+        } catch (IOException | InvalidPathException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean readsPlainFiles(ConfigurationSourceProvider sourceProvider) {
+        return sourceProvider instanceof FileConfigurationSourceProvider || sourceProvider instanceof FileChannelConfigurationSourceProvider;
+    }
+
+    /**
+     * @return the cached source, if it was parsed from a file which is not modified since, and
+     *         was not modified within the granularity of its last modified time before it was parsed.
+     */
+    Optional<Config> get(String path, Set<String> keptEnvironments, FileStamp stamp) {
+        Entry entry = entry(new Key(path, keptEnvironments));
+        return entry != null && entry.stamp != null && entry.stamp.isSettled() && stamp.equals(entry.stamp)
+                ? Optional.of(entry.parsed)
+                : Optional.empty();
+    }
+
+    /**
+     * @return the cached source, if it was parsed from the same content.
+     */
+    Optional<Config> get(String path, Set<String> keptEnvironments, byte[] contentDigest) {
+        Entry entry = entry(new Key(path, keptEnvironments));
+        return entry != null && MessageDigest.isEqual(contentDigest, entry.contentDigest) ? Optional.of(entry.parsed) : Optional.empty();
+    }
+
+    /**
+     * @param stamp the stamp of the file, taken <em>before</em> reading it, or {@code null} if not read from a file.
+     */
+    void put(String path, Set<String> keptEnvironments, FileStamp stamp, byte[] contentDigest, Config parsed) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(new Key(path, keptEnvironments), new Entry(stamp, contentDigest, parsed));
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private Entry entry(Key key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    static byte[] digest(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every Java platform", e);
+        }
+    }
+
+    static final class FileStamp {
+        private final long lastModifiedMillis;
+        private final long size;
+        private final long takenMillis;
+
+        FileStamp(long lastModifiedMillis, long size, long takenMillis) {
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.size = size;
+            this.takenMillis = takenMillis;
+        }
+
+        /**
+         * @return whether the file was last modified long enough before the stamp was taken that any
+         *         later edit is sure to change its last modified time.
+         */
+        boolean isSettled() {
+            return takenMillis - lastModifiedMillis >= MODIFIED_TIME_GRANULARITY_MILLIS;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof FileStamp) {
+                FileStamp that = (FileStamp) obj;
+                return this.lastModifiedMillis == that.lastModifiedMillis && this.size == that.size;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModifiedMillis, size);
+        }
+    }
+
+    private static final class Key {
+        final String path;
+        final Set<String> keptEnvironments;
+
+        Key(String path, Set<String> keptEnvironments) {
+            this.path = path;
+            this.keptEnvironments = keptEnvironments;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key that = (Key) obj;
+                return this.path.equals(that.path) && Objects.equals(this.keptEnvironments, that.keptEnvironments);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, keptEnvironments);
+        }
+    }
+
+    private static final class Entry {
+        final FileStamp stamp;
+        final byte[] contentDigest;
+        final Config parsed;
+
+        Entry(FileStamp stamp, byte[] contentDigest, Config parsed) {
+            this.stamp = stamp;
+            this.contentDigest = contentDigest;
+            this.parsed = parsed;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigParseOptions;
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A configuration precompiled for a set of environments, as written by {@link ConfigurationPrecompiler}.
+ * <p>
+ * The precompiled artifact is the parsed configuration, without the blocks of any other environments
+ * when no substitutions refer to the environments block, and neither reduced nor resolved, as the
+ * secret config and overrides are not known until runtime. Building from the artifact then has exactly
+ * the same result as building from the source, and only skips parsing it, as the tree is still reduced,
+ * resolved, bound and validated as a whole. The values which do not contain any substitutions are stored as a <a href="https://github.com/FasterXML/smile-format-specification">Smile</a>
+ * tree, and the few values which do are stored separately as HOCON, so reading the artifact only
+ * parses the values which must be resolved at runtime. The artifact includes a digest of the source
+ * it was precompiled from, and is only used if the source is unchanged.
+ */
+final class PrecompiledConfig {
+
+    static final String FILE_SUFFIX = ".precompiled.smile";
+
+    private static final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    /**
+     * @return the path of the precompiled artifact for the configuration at the given path, i.e.
+     *         next to the configuration, e.g. {@code config.yml.test.precompiled.smile}.
+     */
+    static String artifactPath(String path, List<String> environments) {
+        return path + "." + String.join("+", environments) + FILE_SUFFIX;
+    }
+
+    /**
+     * Precompile a configuration.
+     *
+     * @param source the content of the configuration source.
+     * @param parsed the parsed configuration, possibly without the blocks of other environments.
+     */
+    static byte[] write(byte[] source, List<String> environments, Config parsed) throws IOException {
+        ObjectNode artifact = smileMapper.createObjectNode();
+        artifact.put("source", digest(source));
+        ArrayNode environmentsNode = artifact.putArray("environments");
+        environments.forEach(environmentsNode::add);
+        Config unresolved = ConfigFactory.empty();
+        ObjectNode resolved = artifact.putObject("resolved");
+        for (UnresolvedValue value : split(parsed.root(), new ArrayList<>(), resolved, new ArrayList<>())) {
+            unresolved = unresolved.withValue(ConfigUtil.joinPath(value.path), value.value);
+        }
+        artifact.put("unresolved", unresolved.root().render(ConfigRenderOptions.concise()));
+        return smileMapper.writeValueAsBytes(artifact);
+    }
+
+    /**
+     * Read a precompiled artifact.
+     *
+     * @param source the current content of the configuration source.
+     * @return the precompiled configuration, as parsed from the source, or
+     *         empty if the artifact is not precompiled from the given source and environments.
+     */
+    static Optional<Config> read(byte[] artifact, String artifactPath, byte[] source, List<String> environments) throws IOException {
+        JsonNode precompiled = smileMapper.readTree(artifact);
+        List<String> precompiledEnvironments = new ArrayList<>();
+        precompiled.path("environments").forEach(environment -> precompiledEnvironments.add(environment.asText()));
+        if (!precompiled.path("source").asText().equals(digest(source)) || !precompiledEnvironments.equals(environments)) {
+            return Optional.empty();
+        }
+        Config resolved = ConfigJsonNodes.toConfigObject(precompiled.path("resolved"), artifactPath).toConfig();
+        Config unresolved = ConfigFactory.parseString(precompiled.path("unresolved").asText(), ConfigParseOptions.defaults().setOriginDescription(artifactPath));
+        return Optional.of(unresolved.withFallback(resolved));
+    }
+
+    /**
+     * Add the values of an object which do not contain substitutions to the given tree,
+     * and collect the values which do.
+     */
+    private static List<UnresolvedValue> split(ConfigObject object, List<String> path, ObjectNode resolved, List<UnresolvedValue> unresolved) {
+        for (Map.Entry<String, ConfigValue> field : object.entrySet()) {
+            List<String> fieldPath = new ArrayList<>(path);
+            fieldPath.add(field.getKey());
+            ConfigValue value = field.getValue();
+            if (value.atKey("value").isResolved()) {
+                resolved.set(field.getKey(), ConfigJsonNodes.toJsonNode(value, smileMapper.getNodeFactory()));
+            } else if (value instanceof ConfigObject && hasKnownFields((ConfigObject) value)) {
+                split((ConfigObject) value, fieldPath, resolved.putObject(field.getKey()), unresolved);
+            } else {
+                unresolved.add(new UnresolvedValue(fieldPath, value));
+            }
+        }
+        return unresolved;
+    }
+
+    /**
+     * @return whether the fields of an object are known, i.e. it is not merged with a substitution.
+     */
+    private static boolean hasKnownFields(ConfigObject object) {
+        try {
+            object.keySet();
+            return true;
+        } catch (ConfigException.NotResolved e) {
+            return false;
+        }
+    }
+
+    private static String digest(byte[] source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(source));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every Java platform", e);
+        }
+    }
+
+    private static final class UnresolvedValue {
+        final List<String> path;
+        final ConfigValue value;
+
+        UnresolvedValue(List<String> path, ConfigValue value) {
+            this.path = path;
+            this.value = value;
+        }
+    }
+
+    private PrecompiledConfig() {
+    }
+}
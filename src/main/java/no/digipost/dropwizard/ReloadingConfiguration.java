@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigUtil;
+import io.dropwizard.configuration.ConfigurationException;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.lifecycle.Managed;
+import no.digipost.dropwizard.configuration.MemoizingConfigurationSourceProviderWithFallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.stream.Collectors.toCollection;
+
+/**
+ * Holds the current configuration, and replaces it when any of its configuration sources
+ * are changed. Sources which are files are watched using a {@link WatchService}, while other
+ * sources, e.g. classpath resources, are polled for changes to their content.
+ * <p>
+ * The configuration is rebuilt using the same {@link TypeSafeConfigurationFactory} as the initial
+ * configuration, with the same {@link ConfigurationBuildContext}, and so with the same environments,
+ * secret config, overrides and validation. If rebuilding fails,
+ * the error is logged and the last successfully built configuration is kept.
+ * Reading the configuration with {@link #get()} never blocks.
+ * <p>
+ * Components can {@link #onChange(String, ConfigurationChangeListener) listen} for changes to specific
+ * parts of the configuration. Listeners are invoked on a dedicated thread, and only if the part of the
+ * configuration they listen to has changed.
+ *
+ * @param <T> The type of config object
+ */
+public final class ReloadingConfiguration<T> implements Supplier<T>, Managed {
+
+    private static final Logger log = LoggerFactory.getLogger(ReloadingConfiguration.class);
+
+    private final TypeSafeConfigurationFactory<T> configurationFactory;
+    private final ConfigurationSourceProvider sourceProvider;
+    private final String path;
+    private final ConfigurationBuildContext buildContext;
+    private final Set<String> sourcePaths;
+    private final Duration pollInterval;
+    private final AtomicReference<T> current;
+    private final Map<String, byte[]> lastSeenFingerprints = new HashMap<>();
+    private final List<ChangeListenerRegistration<? super T>> changeListeners = new CopyOnWriteArrayList<>();
+    private ConfigTreeHash currentTreeHash;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService changeListenerExecutor;
+    private volatile WatchService watchService;
+    private volatile boolean hasPolledSources;
+
+    /**
+     * @param configurationFactory the factory used to rebuild the configuration.
+     * @param sourceProvider the provider of the configuration sources.
+     * @param path the path of the main configuration source, given to the {@code configurationFactory}.
+     * @param sourcePaths the paths of all configuration sources which should trigger rebuilding the configuration
+     *                    when changed. Usually the main configuration source, and possibly a secret config.
+     * @param initial the initial configuration, built from the current state of the configuration sources.
+     * @param pollInterval how often to check for changes.
+     */
+    public ReloadingConfiguration(
+            TypeSafeConfigurationFactory<T> configurationFactory, ConfigurationSourceProvider sourceProvider, String path,
+            Iterable<String> sourcePaths, ResolvedConfiguration<T> initial, Duration pollInterval) {
+
+        this.configurationFactory = configurationFactory;
+        this.sourceProvider = sourceProvider;
+        this.path = path;
+        this.buildContext = initial.getBuildContext();
+        this.sourcePaths = new LinkedHashSet<>();
+        this.sourcePaths.add(path);
+        sourcePaths.forEach(this.sourcePaths::add);
+        this.pollInterval = pollInterval;
+        this.current = new AtomicReference<>(initial.getConfiguration());
+        this.currentTreeHash = ConfigTreeHash.of(initial.getConfigObject());
+    }
+
+    /**
+     * @return the last successfully built configuration.
+     */
+    @Override
+    public T get() {
+        return current.get();
+    }
+
+    /**
+     * Register a listener to be notified when a part of the configuration is changed.
+     *
+     * @param path the path of the part of the config the listener is interested in, e.g. {@code database}
+     *             or {@code httpClient.timeouts}. The empty path {@code ""} listens to any change.
+     * @param listener the listener to be invoked with the reloaded configuration if the value at the path,
+     *                 or anything within it, is changed.
+     */
+    public void onChange(String path, ConfigurationChangeListener<? super T> listener) {
+        List<String> pathElements = path.isEmpty() ? List.of() : ConfigUtil.splitPath(path);
+        changeListeners.add(new ChangeListenerRegistration<>(pathElements, listener));
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        if (scheduler != null) {
+            return;
+        }
+        fingerprints().ifPresent(lastSeenFingerprints::putAll);
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> watchedDirectories = new LinkedHashSet<>();
+        for (String sourcePath : sourcePaths) {
+            Optional<Path> file = asFile(sourcePath);
+            if (file.isPresent()) {
+                Path directory = file.get().toAbsolutePath().getParent();
+                if (watchedDirectories.add(directory)) {
+                    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                }
+            } else {
+                hasPolledSources = true;
+            }
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "configuration-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkForChanges, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Reloading configuration when any of {} changes", sourcePaths);
+    }
+
+    @Override
+    public synchronized void stop() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            watchService.close();
+            watchService = null;
+        }
+        if (changeListenerExecutor != null) {
+            changeListenerExecutor.shutdown();
+            changeListenerExecutor = null;
+        }
+    }
+
+    /**
+     * Rebuild the configuration if any of the configuration sources has changed since
+     * the last time the configuration was rebuilt or attempted rebuilt.
+     *
+     * @return {@code true} if the configuration was replaced
+     */
+    public synchronized boolean reloadIfChanged() {
+        invalidateMemoizedSources();
+        Optional<Map<String, byte[]>> fingerprints = fingerprints();
+        if (fingerprints.isEmpty() || sameFingerprints(fingerprints.get())) {
+            return false;
+        }
+        lastSeenFingerprints.clear();
+        lastSeenFingerprints.putAll(fingerprints.get());
+        return reload();
+    }
+
+    /**
+     * Rebuild the configuration, regardless of any changes to the configuration sources.
+     *
+     * @return {@code true} if the configuration was replaced, or {@code false} if the configuration was invalid,
+     *         and the current configuration is kept.
+     */
+    public synchronized boolean reload() {
+        invalidateMemoizedSources();
+        try {
+            ResolvedConfiguration<T> reloaded = configurationFactory.buildResolved(sourceProvider, path, buildContext);
+            ConfigTreeHash reloadedTreeHash = ConfigTreeHash.of(reloaded.getConfigObject());
+            Set<List<String>> changedPaths = currentTreeHash.changedPathsTo(reloadedTreeHash);
+            current.set(reloaded.getConfiguration());
+            currentTreeHash = reloadedTreeHash;
+            log.info("Reloaded configuration from {}, with {} changed paths", path, changedPaths.size());
+            notifyChangeListeners(reloaded.getConfiguration(), changedPaths);
+            return true;
+        } catch (IOException | ConfigurationException | RuntimeException e) {
+            log.error("Rejected reloaded configuration from {}, keeping the current configuration, because {}: '{}'",
+                    path, e.getClass().getSimpleName(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private void invalidateMemoizedSources() {
+        if (sourceProvider instanceof MemoizingConfigurationSourceProviderWithFallback) {
+            ((MemoizingConfigurationSourceProviderWithFallback) sourceProvider).invalidate();
+        }
+    }
+
+    private void notifyChangeListeners(T configuration, Set<List<String>> changedPaths) {
+        for (ChangeListenerRegistration<? super T> registration : changeListeners) {
+            Set<String> relevantChanges = changedPaths.stream()
+                    .filter(registration::isAffectedBy)
+                    .map(ConfigUtil::joinPath)
+                    .collect(toCollection(LinkedHashSet::new));
+            if (!relevantChanges.isEmpty()) {
+                changeListenerExecutor().execute(() -> registration.notify(configuration, relevantChanges));
+            }
+        }
+    }
+
+    private ExecutorService changeListenerExecutor() {
+        if (changeListenerExecutor == null) {
+            changeListenerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "configuration-change-listeners");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return changeListenerExecutor;
+    }
+
+    private void checkForChanges() {
+        WatchService watcher = watchService;
+        if (watcher == null) {
+            return;
+        }
+        try {
+            boolean filesChanged = false;
+            for (WatchKey key = watcher.poll(); key != null; key = watcher.poll()) {
+                key.pollEvents();
+                key.reset();
+                filesChanged = true;
+            }
+            if (filesChanged || hasPolledSources) {
+                reloadIfChanged();
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Stopped watching configuration sources");
+        } catch (RuntimeException e) {
+            log.warn("Failed checking for configuration changes, because {}: '{}'", e.getClass().getSimpleName(), e.getMessage(), e);
+        }
+    }
+
+    private boolean sameFingerprints(Map<String, byte[]> fingerprints) {
+        return fingerprints.keySet().equals(lastSeenFingerprints.keySet()) && fingerprints.entrySet().stream()
+                .allMatch(fingerprint -> MessageDigest.isEqual(fingerprint.getValue(), lastSeenFingerprints.get(fingerprint.getKey())));
+    }
+
+    /**
+     * @return the fingerprints of all sources, or empty if any of them are not currently readable,
+     *         e.g. while a file is being replaced.
+     */
+    private Optional<Map<String, byte[]>> fingerprints() {
+        List<String> unreadable = new ArrayList<>();
+        Map<String, byte[]> fingerprints = new HashMap<>();
+        for (String sourcePath : sourcePaths) {
+            try (DigestInputStream source = new DigestInputStream(sourceProvider.open(sourcePath), MessageDigest.getInstance("SHA-256"))) {
+                source.transferTo(OutputStream.nullOutputStream());
+                fingerprints.put(sourcePath, source.getMessageDigest().digest());
+            } catch (IOException e) {
+                unreadable.add(sourcePath + " (" + e.getClass().getSimpleName() + ": '" + e.getMessage() + "')");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is required to be supported by every Java platform", e);
+            }
+        }
+        if (!unreadable.isEmpty()) {
+            log.debug("Not checking for configuration changes, because unable to read {}", unreadable);
+            return Optional.empty();
+        }
+        return Optional.of(fingerprints);
+    }
+
+    private static Optional<Path> asFile(String sourcePath) {
+        try {
+            Path file = Paths.get(sourcePath);
+            return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+        } catch (InvalidPathException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static final class ChangeListenerRegistration<T> {
+        final List<String> path;
+        final ConfigurationChangeListener<T> listener;
+
+        ChangeListenerRegistration(List<String> path, ConfigurationChangeListener<T> listener) {
+            this.path = path;
+            this.listener = listener;
+        }
+
+        boolean isAffectedBy(List<String> changedPath) {
+            int commonLength = Math.min(path.size(), changedPath.size());
+            return path.subList(0, commonLength).equals(changedPath.subList(0, commonLength));
+        }
+
+        void notify(T configuration, Set<String> changedPaths) {
+            try {
+                listener.configurationChanged(configuration, changedPaths);
+            } catch (RuntimeException e) {
+                log.error("Configuration change listener for '{}' failed, because {}: '{}'",
+                        path.isEmpty() ? "" : ConfigUtil.joinPath(path), e.getClass().getSimpleName(), e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigObject;
+
+import java.util.Set;
+
+/**
+ * A configuration object, together with the resolved and environment specific
+ * config tree it was bound from.
+ *
+ * @param <T> The type of config object
+ */
+public final class ResolvedConfiguration<T> {
+
+    private final String path;
+    private final ConfigObject configObject;
+    private final T configuration;
+    private final ConfigurationBuildTimings buildTimings;
+    private final ConfigurationBuildContext buildContext;
+    private final Set<String> secretValuePaths;
+
+    /**
+     * @param secretValuePaths the paths of the values set by the secret config, as found by {@link ConfigDump#secretValuePaths(ConfigObject)}.
+     */
+    ResolvedConfiguration(String path, ConfigObject configObject, T configuration, ConfigurationBuildTimings buildTimings,
+                          ConfigurationBuildContext buildContext, Set<String> secretValuePaths) {
+        this.path = path;
+        this.configObject = configObject;
+        this.configuration = configuration;
+        this.buildTimings = buildTimings;
+        this.buildContext = buildContext;
+        this.secretValuePaths = secretValuePaths;
+    }
+
+    /**
+     * @return the path of the configuration the configuration was built from, as given to the factory.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the resolved config tree, not including any overrides from system properties
+     *         with the Dropwizard property prefix.
+     */
+    public ConfigObject getConfigObject() {
+        return configObject;
+    }
+
+    public T getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return the time spent in each phase of building the configuration.
+     */
+    public ConfigurationBuildTimings getBuildTimings() {
+        return buildTimings;
+    }
+
+    /**
+     * @return the environments, secret config, overrides and options the configuration was built with.
+     */
+    public ConfigurationBuildContext getBuildContext() {
+        return buildContext;
+    }
+
+    /**
+     * @return the paths of the values from the secret config, as written by {@link ConfigDump}.
+     */
+    Set<String> getSecretValuePaths() {
+        return secretValuePaths;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
+import io.dropwizard.configuration.ConfigurationException;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.RESOLVE;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.nodesIn;
+
+/**
+ * Builds the configurations of many tenants, which all share the same base configuration, with a
+ * small tenant specific overlay on top. Created by
+ * {@link TypeSafeConfigurationFactory#forTenants(ConfigurationSourceProvider, String, ConfigurationBuildContext)}.
+ * <p>
+ * The base configuration is only loaded, resolved against the overrides, and reduced to the active
+ * environments once. Unless the base refers to values which are only given by the overlays, the base and
+ * the secret config are also resolved once. Building the configuration of a tenant reduces the overlay to
+ * the same environments, and if the overlay does not change any value which the base or secret config
+ * refers to, only the overlay is resolved on top of the resolved base. Otherwise, the overlay is merged
+ * on top of the unresolved base, and the result is resolved in full.
+ * <p>
+ * Config trees are immutable, so the resolved config of a tenant shares the subtrees of the base which are
+ * not changed by its overlay. The configuration object of each tenant is still bound from its full
+ * config tree, so the time and memory used to bind it grows with the size of the full configuration.
+ * <p>
+ * Values in an overlay take precedence over the base, including the environment specific values of the base,
+ * and the secret config of the context takes precedence over both. Substitutions in the base may refer to values
+ * in the overlay. Building is thread-safe.
+ *
+ * @param <T> The type of config object
+ */
+public final class TenantConfigurations<T> {
+
+    private final TypeSafeConfigurationFactory<T> configurationFactory;
+    private final ConfigurationSourceProvider sourceProvider;
+    private final String basePath;
+    private final ConfigurationBuildContext context;
+    private final Config reducedBase;
+    private final Optional<Config> reducedSecrets;
+    private final ConfigurationBuildTimings baseTimings;
+    private final Optional<ResolvedBase> resolvedBase;
+    private final Set<String> secretValuePaths;
+
+    TenantConfigurations(
+            TypeSafeConfigurationFactory<T> configurationFactory, ConfigurationSourceProvider sourceProvider, String basePath,
+            ConfigurationBuildContext context, Config reducedBase, Optional<Config> reducedSecrets, ConfigurationBuildTimings baseTimings) {
+
+        this.configurationFactory = configurationFactory;
+        this.sourceProvider = sourceProvider;
+        this.basePath = basePath;
+        this.context = context;
+        this.reducedBase = reducedBase;
+        this.reducedSecrets = reducedSecrets;
+        this.baseTimings = baseTimings;
+        this.resolvedBase = ResolvedBase.of(reducedBase, reducedSecrets, basePath, baseTimings);
+        this.secretValuePaths = TypeSafeConfigurationFactory.secretValuePaths(reducedSecrets);
+    }
+
+    /**
+     * Build the configuration of a tenant with the given overlay.
+     *
+     * @param tenant the tenant, which is included in the description of any errors.
+     * @param overlay the overlay of the tenant, with the same structure as the base configuration,
+     *                and possibly its own {@code environments} block.
+     */
+    public ResolvedConfiguration<T> build(String tenant, Config overlay) throws IOException, ConfigurationException {
+        ConfigurationBuildTimings timings = new ConfigurationBuildTimings();
+        String path = describe(tenant);
+        return build(TypeSafeConfigurationFactory.resolveWithOverrides(overlay, path, context, timings), path, timings);
+    }
+
+    /**
+     * Build the configuration of a tenant with an overlay loaded from the same source provider as the base.
+     *
+     * @param tenant the tenant, which is included in the description of any errors.
+     * @param overlayPath the path of the overlay, in either .conf or .yml format.
+     */
+    public ResolvedConfiguration<T> build(String tenant, String overlayPath) throws IOException, ConfigurationException {
+        ConfigurationBuildTimings timings = new ConfigurationBuildTimings();
+        String path = describe(tenant);
+        return build(configurationFactory.loadOverlay(sourceProvider, overlayPath, context, timings), path, timings);
+    }
+
+    private ResolvedConfiguration<T> build(Config overlay, String path, ConfigurationBuildTimings timings) throws IOException, ConfigurationException {
+        Config reducedOverlay = TypeSafeConfigurationFactory.reduce(context.getEnvironments(), overlay, path, timings);
+        Optional<ResolvedBase> sharedBase = resolvedBase.filter(base -> !base.isReferredToBy(reducedOverlay));
+        if (sharedBase.isPresent()) {
+            Config overlaid = sharedBase.get().secretValues.withFallback(reducedOverlay).withFallback(sharedBase.get().config);
+            return configurationFactory.buildOverlaid(overlaid, nodesIn(reducedOverlay.root()), secretValuePaths, path, context, timings);
+        }
+        Config overlaid = reducedOverlay.withFallback(reducedBase);
+        Config configWithSecrets = reducedSecrets.map(secrets -> secrets.withFallback(overlaid)).orElse(overlaid);
+        return configurationFactory.buildOverlaid(configWithSecrets, nodesIn(configWithSecrets.root()), secretValuePaths, path, context, timings);
+    }
+
+    /**
+     * Build the configurations of every given tenant concurrently, in the {@link ForkJoinPool#commonPool() common pool}.
+     *
+     * @see #buildAll(Map, ForkJoinPool)
+     */
+    public Map<String, ResolvedConfiguration<T>> buildAll(Map<String, Config> overlays) throws IOException, ConfigurationException {
+        return buildAll(overlays, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Build the configurations of every given tenant concurrently in the given pool.
+     *
+     * @param overlays the overlay of each tenant.
+     * @return the configuration of each tenant, in the same order as the given overlays.
+     * @throws ConfigurationException the exception from building the configuration of the first failing tenant,
+     *                                in the order of the given overlays, with the exceptions of any other failing
+     *                                tenants {@link Throwable#addSuppressed(Throwable) suppressed}.
+     *                                Likewise for {@link IOException} and {@link RuntimeException}.
+     */
+    public Map<String, ResolvedConfiguration<T>> buildAll(Map<String, Config> overlays, ForkJoinPool pool) throws IOException, ConfigurationException {
+        Map<String, ForkJoinTask<Object>> builds = new LinkedHashMap<>();
+        overlays.forEach((tenant, overlay) -> builds.put(tenant, pool.submit(() -> {
+            try {
+                return build(tenant, overlay);
+            } catch (Exception e) {
+                return e;
+            }
+        })));
+
+        Map<String, ResolvedConfiguration<T>> built = new LinkedHashMap<>();
+        Exception failure = null;
+        for (Map.Entry<String, ForkJoinTask<Object>> build : builds.entrySet()) {
+            Object result = build.getValue().join();
+            if (!(result instanceof Exception)) {
+                @SuppressWarnings("unchecked")
+                ResolvedConfiguration<T> configuration = (ResolvedConfiguration<T>) result;
+                built.put(build.getKey(), configuration);
+            } else if (failure == null) {
+                failure = (Exception) result;
+            } else {
+                failure.addSuppressed((Exception) result);
+            }
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof ConfigurationException) {
+            throw (ConfigurationException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return built;
+    }
+
+    /**
+     * @return the time spent loading, resolving and reducing the shared base configuration.
+     */
+    public ConfigurationBuildTimings getBaseTimings() {
+        return baseTimings;
+    }
+
+    private String describe(String tenant) {
+        return basePath + " for tenant " + tenant;
+    }
+
+    /**
+     * The base and secret config resolved on their own, with the paths of every substitution in them,
+     * and the resolved values of the secret config, which are merged on top of each overlay so that they
+     * still take precedence over it.
+     */
+    private static final class ResolvedBase {
+
+        final Config config;
+        final Config secretValues;
+        private final Set<List<String>> substitutions;
+
+        private ResolvedBase(Config config, Config secretValues, Set<List<String>> substitutions) {
+            this.config = config;
+            this.secretValues = secretValues;
+            this.substitutions = substitutions;
+        }
+
+        static Optional<ResolvedBase> of(Config reducedBase, Optional<Config> reducedSecrets, String basePath, ConfigurationBuildTimings timings) {
+            Config configWithSecrets = reducedSecrets.map(secrets -> secrets.withFallback(reducedBase)).orElse(reducedBase);
+            try {
+                Set<List<String>> substitutions = new HashSet<>();
+                if (!configWithSecrets.isResolved()) {
+                    String rendered = configWithSecrets.root().render(ConfigRenderOptions.concise());
+                    for (String substitution : CompiledConfigCache.substitutionsIn(rendered)) {
+                        substitutions.add(ConfigUtil.splitPath(substitution));
+                    }
+                }
+                Config resolved = timings.time(RESOLVE, basePath, nodesIn(configWithSecrets.root()), configWithSecrets::resolve);
+                Config secretValues = reducedSecrets
+                        .map(secrets -> onlyKeysOf(secrets.root(), resolved.root()).toConfig())
+                        .orElseGet(ConfigFactory::empty);
+                return Optional.of(new ResolvedBase(resolved, secretValues, substitutions));
+            } catch (ConfigException e) {
+                return Optional.empty();
+            }
+        }
+
+        private static ConfigObject onlyKeysOf(ConfigObject secrets, ConfigObject resolved) {
+            ConfigObject kept = resolved;
+            for (String key : resolved.keySet()) {
+                ConfigValue secret = secrets.get(key);
+                ConfigValue value = resolved.get(key);
+                if (secret == null) {
+                    kept = kept.withoutKey(key);
+                } else if (secret instanceof ConfigObject && value instanceof ConfigObject) {
+                    kept = kept.withValue(key, onlyKeysOf((ConfigObject) secret, (ConfigObject) value));
+                }
+            }
+            return kept;
+        }
+
+        /**
+         * @return whether the overlay sets any value which a substitution of the base refers to, or any value within it,
+         *         or if that can not be determined, because the overlay has substitutions which are merged with other values.
+         */
+        boolean isReferredToBy(Config overlay) {
+            try {
+                return isReferredToBy(overlay.root(), new ArrayList<>());
+            } catch (ConfigException.NotResolved e) {
+                return true;
+            }
+        }
+
+        private boolean isReferredToBy(ConfigValue value, List<String> path) {
+            for (int length = 0; length <= path.size(); length++) {
+                if (substitutions.contains(path.subList(0, length))) {
+                    return true;
+                }
+            }
+            if (!(value instanceof ConfigObject)) {
+                return substitutions.stream().anyMatch(substitution -> substitution.size() > path.size() && substitution.subList(0, path.size()).equals(path));
+            }
+            for (Map.Entry<String, ConfigValue> field : ((ConfigObject) value).entrySet()) {
+                path.add(field.getKey());
+                boolean referredTo = isReferredToBy(field.getValue(), path);
+                path.remove(path.size() - 1);
+                if (referredTo) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
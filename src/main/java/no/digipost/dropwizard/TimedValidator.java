@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.validation.executable.ExecutableValidator;
+import jakarta.validation.metadata.BeanDescriptor;
+
+import java.util.Set;
+
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.VALIDATE;
+
+/**
+ * Records the time of validating a configuration in {@link ConfigurationBuildTimings}, when
+ * the validation is done between {@link #startTiming(ConfigurationBuildTimings, long)} and
+ * {@link #stopTiming()} on the same thread. Otherwise it simply delegates to the given {@link Validator}.
+ */
+final class TimedValidator implements Validator {
+
+    private static final class CurrentTimings {
+        final ConfigurationBuildTimings timings;
+        final long size;
+
+        CurrentTimings(ConfigurationBuildTimings timings, long size) {
+            this.timings = timings;
+            this.size = size;
+        }
+    }
+
+    private final Validator validator;
+    private final ThreadLocal<CurrentTimings> currentTimings = new ThreadLocal<>();
+
+    TimedValidator(Validator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Record the time of validations done by the current thread in the given timings,
+     * until {@link #stopTiming()} is called.
+     *
+     * @param size the size of the validated configuration, as given by {@link ConfigurationBuildTimings.Phase#VALIDATE}
+     */
+    void startTiming(ConfigurationBuildTimings timings, long size) {
+        currentTimings.set(new CurrentTimings(timings, size));
+    }
+
+    void stopTiming() {
+        currentTimings.remove();
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validate(T object, Class<?>... groups) {
+        CurrentTimings current = currentTimings.get();
+        if (current == null) {
+            return validator.validate(object, groups);
+        }
+        return current.timings.time(VALIDATE, null, current.size, () -> validator.validate(object, groups));
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validateProperty(T object, String propertyName, Class<?>... groups) {
+        return validator.validateProperty(object, propertyName, groups);
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validateValue(Class<T> beanType, String propertyName, Object value, Class<?>... groups) {
+        return validator.validateValue(beanType, propertyName, value, groups);
+    }
+
+    @Override
+    public BeanDescriptor getConstraintsForClass(Class<?> clazz) {
+        return validator.getConstraintsForClass(clazz);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) {
+        return validator.unwrap(type);
+    }
+
+    @Override
+    public ExecutableValidator forExecutables() {
+        return validator.forExecutables();
+    }
+}
@@ -15,34 +15,52 @@
  */
 package no.digipost.dropwizard;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigIncluder;
 import com.typesafe.config.ConfigObject;
 import com.typesafe.config.ConfigParseOptions;
-import com.typesafe.config.ConfigRenderOptions;
 import com.typesafe.config.ConfigResolveOptions;
-import com.typesafe.config.ConfigSyntax;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
 import io.dropwizard.configuration.ConfigurationException;
 import io.dropwizard.configuration.ConfigurationSourceProvider;
 import io.dropwizard.configuration.YamlConfigurationFactory;
 import jakarta.validation.Validator;
+import no.digipost.dropwizard.configuration.ByteBufferInputStream;
+import no.digipost.jackson.JsonDurationModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import static com.typesafe.config.ConfigFactory.defaultOverrides;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.BIND;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.OPEN;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.PARSE;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.REDUCE;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.RESOLVE;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.nodesIn;
 
 public class TypeSafeConfigurationFactory<T> extends YamlConfigurationFactory<T> {
 
@@ -50,49 +68,394 @@ public class TypeSafeConfigurationFactory<T> extends YamlConfigurationFactory<T>
     public static final String SECRET_KEY = "secret";
     public static final String ENVIRONMENTS_CONFIG_KEY = "environments";
 
+    /**
+     * System property for enabling a persistent cache of the resolved configuration,
+     * which value is the directory to store the cache in. The cache is only used if
+     * none of the configuration sources, environments, nor system properties or environment
+     * variables referenced from the sources have changed. Example: {@code -DconfigCache=/var/cache/myapp}
+     */
+    public static final String CONFIG_CACHE_KEY = "configCache";
+
+    /**
+     * System property for enabling pruning of the blocks for environments other than the active ones
+     * while loading the configuration, instead of after it is loaded. For YAML, the other environments
+     * are skipped without being parsed, and for HOCON they are removed right after parsing.
+     * The resulting configuration is the same, except that substitutions can not refer to values in
+     * the blocks of other environments. Example: {@code -DpruneEnvironments=true}
+     */
+    public static final String PRUNE_ENVIRONMENTS_KEY = "pruneEnvironments";
+
+    /**
+     * System property for enabling the use of a configuration precompiled by {@link ConfigurationPrecompiler}
+     * for the active environments, if it is found next to the configuration, and the configuration
+     * is unchanged since it was precompiled. Otherwise, the configuration is built as usual.
+     * Only parsing the configuration is skipped, as it is still reduced, resolved, bound and validated at runtime.
+     * Example: {@code -DprecompiledConfig=true}
+     */
+    public static final String PRECOMPILED_CONFIG_KEY = "precompiledConfig";
+
     private static final Logger log = LoggerFactory.getLogger(TypeSafeConfigurationFactory.class);
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+    private static final YAMLFactory yamlFactory = new YAMLFactory();
 
-    private final ObjectMapper mapper;
-    private final YAMLFactory yamlFactory;
+    private final TimedValidator validator;
     private final String propertyPrefix;
+    private volatile ResolvedConfiguration<T> lastBuilt;
+    private volatile EarlyResolution earlyResolution;
 
     public TypeSafeConfigurationFactory(Class<T> klass, Validator validator, ObjectMapper mapper, String propertyPrefix) {
-        super(klass, validator, mapper, propertyPrefix);
+        this(klass, new TimedValidator(validator), mapper, propertyPrefix);
+    }
+
+    private TypeSafeConfigurationFactory(Class<T> klass, TimedValidator validator, ObjectMapper mapper, String propertyPrefix) {
+        super(klass, validator, mapper.copy().registerModule(new LazyModule(validator)).registerModule(new JsonDurationModule()), propertyPrefix);
+        this.validator = validator;
         this.propertyPrefix = propertyPrefix.endsWith(".") ? propertyPrefix : propertyPrefix + '.';
-        this.mapper = mapper;
-        this.yamlFactory = new YAMLFactory();
     }
 
     @Override
     public T build(ConfigurationSourceProvider sourceProvider, String path) throws IOException, ConfigurationException {
-        Config loaded = loadConfig(sourceProvider, path);
+        return buildResolved(sourceProvider, path).getConfiguration();
+    }
+
+    /**
+     * Build the configuration in the same way as {@link #build(ConfigurationSourceProvider, String)},
+     * and also include the resolved config tree which the configuration was bound from.
+     */
+    public ResolvedConfiguration<T> buildResolved(ConfigurationSourceProvider sourceProvider, String path) throws IOException, ConfigurationException {
+        return buildResolved(sourceProvider, path, ConfigurationBuildContext.fromSystemProperties(propertyPrefix));
+    }
+
+    /**
+     * Build the configuration with the environments, secret config, overrides and options of the given
+     * context, instead of reading them from system properties. Building is thread-safe, so configurations
+     * with different contexts may be built concurrently by the same factory.
+     */
+    public ResolvedConfiguration<T> buildResolved(ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context) throws IOException, ConfigurationException {
+        ResolvedConfiguration<T> resolved = resolveAndBind(sourceProvider, path, context);
+        lastBuilt = resolved;
+        return resolved;
+    }
+
+    /**
+     * @return the configuration last built by this factory, or {@code null} if none have been built yet.
+     */
+    ResolvedConfiguration<T> lastBuilt() {
+        return lastBuilt;
+    }
+
+    private ResolvedConfiguration<T> resolveAndBind(ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context) throws IOException, ConfigurationException {
+        EarlyResolution early = earlyResolution;
+        if (early != null && early.isFor(sourceProvider, path, context)) {
+            earlyResolution = null;
+            return bind(early.join(), path);
+        }
+        return bind(resolve(sourceProvider, path, context), path);
+    }
+
+    /**
+     * Start loading and resolving a config tree in the background, so that a factory which is later asked to build
+     * a configuration from the same source provider, path and context, only has to bind it.
+     *
+     * @see #useEarlyResolution(EarlyResolution)
+     */
+    static EarlyResolution resolveEarly(ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context) {
+        return new EarlyResolution(sourceProvider, path, context, ConcurrentSourceLoading.supplyAsync(() -> resolve(sourceProvider, path, context)));
+    }
+
+    /**
+     * Use a config tree resolved in the background for the first build of a configuration from the same
+     * source provider, path and context. Any other build is done as usual.
+     */
+    void useEarlyResolution(EarlyResolution early) {
+        this.earlyResolution = early;
+    }
+
+    /**
+     * Load and resolve the config tree, which is every part of building a configuration
+     * except binding it, and so does not depend on the type of configuration.
+     */
+    private static ResolvedTree resolve(ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context) {
+        if (context.getEnvironments().isEmpty()) {
+            throw new RuntimeException(
+                    "System.property " + ENV_KEY + " is required and must have a corresponding section in the config file. Example: -Denv=local");
+        }
+        ConfigurationBuildTimings timings = new ConfigurationBuildTimings();
+        Set<String> keptEnvironments = context.isPruningEnvironments() ? environmentKeys(context.getEnvironments()) : null;
+
+        if (context.isUsingPrecompiledConfig()) {
+            Optional<ResolvedTree> precompiled = resolvePrecompiled(sourceProvider, path, context, keptEnvironments, timings);
+            if (precompiled.isPresent()) {
+                return precompiled.get();
+            }
+        }
+
+        Optional<CompiledConfigCache> compiledConfigCache = context.getCompiledConfigCache().map(CompiledConfigCache::new);
+        if (compiledConfigCache.isPresent()) {
+            return resolveWithCache(compiledConfigCache.get(), sourceProvider, path, context, keptEnvironments, timings);
+        }
+
+        return resolveConfig(sourceProvider, path, context, keptEnvironments, null, null, timings);
+    }
+
+    private ResolvedConfiguration<T> bind(ResolvedTree resolved, String path) throws IOException, ConfigurationException {
+        logConfig(resolved.configObject, resolved.secretValuePaths);
+        JsonNode config;
+        if (resolved.compiledConfig != null) {
+            config = resolved.compiledConfig.config;
+        } else {
+            config = ConfigJsonNodes.toJsonNode(resolved.configObject, mapper.getNodeFactory());
+            if (resolved.cache != null) {
+                resolved.cache.put(resolved.cacheKey, config, resolved.secretValuePaths);
+            }
+        }
+        return new ResolvedConfiguration<>(path, resolved.configObject, bind(config, path, resolved.timings), resolved.timings, resolved.context, resolved.secretValuePaths);
+    }
+
+    private static ResolvedTree resolveWithCache(
+            CompiledConfigCache cache, ConfigurationSourceProvider sourceProvider, String path,
+            ConfigurationBuildContext context, Set<String> keptEnvironments, ConfigurationBuildTimings timings) {
+
+        List<String> environments = context.getEnvironments();
+        List<String> sourcePaths = sourcePaths(path, context.getSecretPath());
+        List<byte[]> sourceContents = ConcurrentSourceLoading.loadAll(sourcePaths, sourcePath -> readSource(sourceProvider, sourcePath, timings));
+        Map<String, byte[]> sources = new LinkedHashMap<>();
+        for (int i = 0; i < sourcePaths.size(); i++) {
+            sources.put(sourcePaths.get(i), sourceContents.get(i));
+        }
+
+        ConfigurationSourceProvider readSources = sourcePath -> sources.containsKey(sourcePath)
+                ? new ByteBufferInputStream(ByteBuffer.wrap(sources.get(sourcePath)))
+                : sourceProvider.open(sourcePath);
+        if (sources.entrySet().stream().anyMatch(source -> IncludingSourceLoader.mayInclude(source.getValue(), source.getKey()))) {
+            log.info("Not using compiled configuration cache for {}, because it may include other sources, which are not part of the cache key", path);
+            return resolveConfig(readSources, path, context, keptEnvironments, null, null, timings);
+        }
+
+        CompiledConfigCache.Key key = cache.key(sources, context);
+        Optional<CompiledConfigCache.Entry> cachedConfig = cache.get(key);
+        if (cachedConfig.isPresent()) {
+            log.info("Using compiled configuration {} for {} with environments {}", key, path, environments);
+            ConfigObject rootConfigObject = ConfigJsonNodes.toConfigObject(cachedConfig.get().config, "compiled configuration " + key);
+            return new ResolvedTree(rootConfigObject, cachedConfig.get().secretValuePaths, cachedConfig.get(), null, null, timings, context);
+        }
+
+        return resolveConfig(readSources, path, context, keptEnvironments, cache, key, timings);
+    }
+
+    private static Optional<ResolvedTree> resolvePrecompiled(
+            ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context,
+            Set<String> keptEnvironments, ConfigurationBuildTimings timings) {
+
+        String artifactPath = PrecompiledConfig.artifactPath(path, context.getEnvironments());
+        byte[] artifact;
+        try (InputStream opened = sourceProvider.open(artifactPath)) {
+            if (opened == null) {
+                log.info("Precompiled configuration {} not found, building {} with environments {}", artifactPath, path, context.getEnvironments());
+                return Optional.empty();
+            }
+            artifact = timings.time(OPEN, artifactPath, opened::readAllBytes, content -> content.length);
+        } catch (IOException e) {
+            log.info("Precompiled configuration {} not found, building {} with environments {}", artifactPath, path, context.getEnvironments());
+            return Optional.empty();
+        }
+        byte[] source = readSource(sourceProvider, path, timings);
+        Optional<Config> precompiled;
+        try {
+            precompiled = timings.time(PARSE, artifactPath, artifact.length,
+                    () -> PrecompiledConfig.read(artifact, artifactPath, source, context.getEnvironments()));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable precompiled configuration {}, because {}: '{}'", artifactPath, e.getClass().getSimpleName(), e.getMessage());
+            return Optional.empty();
+        }
+        if (precompiled.isEmpty()) {
+            log.warn("Precompiled configuration {} is not precompiled from the current {}, building it with environments {}", artifactPath, path, context.getEnvironments());
+            return Optional.empty();
+        }
+
+        Config config = resolveWithOverrides(precompiled.get(), path, context, timings);
+        Optional<String> secretsPath = context.getSecretPath();
+        Optional<Config> reducedSecrets = secretsPath
+                .map(secretPath -> reduce(context.getEnvironments(), loadConfig(sourceProvider, secretPath, keptEnvironments, timings), secretPath, timings));
+        Config configWithSecrets = reduceWithSecrets(context.getEnvironments(), config, path, reducedSecrets, timings);
+        return Optional.of(new ResolvedTree(resolveReduced(configWithSecrets, timings), secretValuePaths(reducedSecrets), null, null, null, timings, context));
+    }
+
+    /**
+     * @param cache the cache to put the tree in when converted for binding, or {@code null} to not cache it.
+     */
+    private static ResolvedTree resolveConfig(
+            ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context, Set<String> keptEnvironments,
+            CompiledConfigCache cache, CompiledConfigCache.Key cacheKey, ConfigurationBuildTimings timings) {
 
-        Config config = loaded.resolveWith(defaultOverrides(), ConfigResolveOptions.defaults().setAllowUnresolved(true));
+        Optional<String> secretsPath = context.getSecretPath();
+        List<Config> loadedSources = loadConfigs(sourceProvider, sourcePaths(path, secretsPath), keptEnvironments, timings);
+        Config config = resolveWithOverrides(loadedSources.get(0), path, context, timings);
+        Optional<Config> reducedSecrets = loadedSources.stream().skip(1).findFirst()
+                .map(secrets -> reduce(context.getEnvironments(), secrets, secretsPath.get(), timings));
 
-        List<String> environments = firstAvailableSystemProperty(ENV_KEY, propertyPrefix + ENV_KEY)
-                .map(commaSeparatedEnvs -> Stream.of(commaSeparatedEnvs.split(",\\s?")))
-                .orElseThrow(() -> new RuntimeException(
-                        "System.property " + ENV_KEY + " is required and must have a corresponding section in the config file. Example: -Denv=local"))
+        Config configWithSecrets = reduceWithSecrets(context.getEnvironments(), config, path, reducedSecrets, timings);
+        return new ResolvedTree(resolveReduced(configWithSecrets, timings), secretValuePaths(reducedSecrets), null, cache, cacheKey, timings, context);
+    }
+
+    /**
+     * @return the paths set by the secret config, already reduced to the environments of the build.
+     */
+    static Set<String> secretValuePaths(Optional<Config> reducedSecrets) {
+        return reducedSecrets.map(secrets -> ConfigDump.secretValuePaths(secrets.root())).orElseGet(Set::of);
+    }
+
+    /**
+     * Resolve the substitutions which are overridden by the context, leaving any other substitutions
+     * to be resolved after the config is reduced to the active environments. If the context has an
+     * override resolver, it looks up environment variables itself, after system properties.
+     */
+    static Config resolveWithOverrides(Config loaded, String path, ConfigurationBuildContext context, ConfigurationBuildTimings timings) {
+        if (loaded.isResolved()) {
+            return loaded;
+        }
+        ConfigResolveOptions options = context.getOverrideResolver()
+                .map(resolver -> ConfigResolveOptions.defaults().setUseSystemEnvironment(false).appendResolver(resolver))
+                .orElseGet(ConfigResolveOptions::defaults)
+                .setAllowUnresolved(true);
+        return timings.time(RESOLVE, path, nodesIn(loaded.root()), () -> loaded.resolveWith(context.getOverrides(), options));
+    }
+
+    /**
+     * @param reducedSecrets the secret config, already reduced to the given environments.
+     */
+    private static Config reduceWithSecrets(
+            List<String> environments, Config config, String path, Optional<Config> reducedSecrets, ConfigurationBuildTimings timings) {
+
+        Config envSpecificConfig = reduce(environments, config, path, timings);
+        return reducedSecrets.map(secrets -> secrets.withFallback(envSpecificConfig)).orElse(envSpecificConfig);
+    }
+
+    static Config reduce(List<String> environments, Config config, String path, ConfigurationBuildTimings timings) {
+        return timings.time(REDUCE, path, nodesIn(config.root()), () -> reduceToEnvironmentSpecific(environments, config));
+    }
+
+    private static ConfigObject resolveReduced(Config configWithSecrets, ConfigurationBuildTimings timings) {
+        return timings.time(RESOLVE, null, nodesIn(configWithSecrets.root()),
+                () -> configWithSecrets.resolve().withoutPath("variables").root());
+    }
+
+    /**
+     * Build and validate the configuration for every environment in the {@code environments} block of
+     * the config, instead of only the environments given by the {@code env} system property.
+     * The secret config and overrides are read from system properties, as for
+     * {@link ConfigurationBuildContext#fromSystemProperties(String)}. The sources are loaded and parsed once, and each environment is then reduced, resolved, bound
+     * and validated in parallel in the {@link ForkJoinPool#commonPool() common pool}. Failures are
+     * reported per environment, instead of being thrown.
+     *
+     * @return the outcome for every environment, in alphabetical order.
+     */
+    public EnvironmentsValidationReport validateAllEnvironments(ConfigurationSourceProvider sourceProvider, String path) {
+        return validateAllEnvironments(sourceProvider, path, ConfigurationBuildContext.fromSystemProperties(propertyPrefix), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Like {@link #validateAllEnvironments(ConfigurationSourceProvider, String)}, but with the secret config
+     * and overrides of the given context, and validating the environments in the given pool. The environments
+     * and options of the context are not used.
+     */
+    public EnvironmentsValidationReport validateAllEnvironments(
+            ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context, ForkJoinPool pool) {
+
+        Optional<String> secretsPath = context.getSecretPath();
+        ConfigurationBuildTimings sharedTimings = new ConfigurationBuildTimings();
+        List<Config> loadedSources = loadConfigs(sourceProvider, sourcePaths(path, secretsPath), null, sharedTimings);
+        Config config = resolveWithOverrides(loadedSources.get(0), path, context, sharedTimings);
+        Optional<Config> secretsConfig = loadedSources.stream().skip(1).findFirst();
+
+        Set<String> environments = new TreeSet<>(config.hasPath(ENVIRONMENTS_CONFIG_KEY) ? config.getObject(ENVIRONMENTS_CONFIG_KEY).keySet() : Set.of());
+        List<ForkJoinTask<EnvironmentsValidationReport.EnvironmentResult>> validations = environments.stream()
+                .map(environment -> pool.submit(() -> {
+                    ConfigurationBuildTimings timings = new ConfigurationBuildTimings();
+                    try {
+                        Optional<Config> reducedSecrets = secretsConfig.map(secrets -> reduce(List.of(environment), secrets, secretsPath.get(), timings));
+                        Config configWithSecrets = reduceWithSecrets(List.of(environment), config, path, reducedSecrets, timings);
+                        ConfigObject rootConfigObject = resolveReduced(configWithSecrets, timings);
+                        bind(ConfigJsonNodes.toJsonNode(rootConfigObject, mapper.getNodeFactory()), path, timings);
+                        return new EnvironmentsValidationReport.EnvironmentResult(environment, null, timings);
+                    } catch (Exception e) {
+                        return new EnvironmentsValidationReport.EnvironmentResult(environment, e, timings);
+                    }
+                }))
                 .collect(toList());
+        return new EnvironmentsValidationReport(path, validations.stream().map(ForkJoinTask::join).collect(toList()), sharedTimings);
+    }
 
-        Config envSpecificConfig = reduceToEnvironmentSpecific(environments, config);
+    /**
+     * Prepare building configurations for many tenants, which all share the same base configuration,
+     * with a small tenant specific overlay on top. The base configuration and secret config are loaded,
+     * resolved against the overrides, and reduced to the active environments of the given context once.
+     * Unless the base refers to values which are only given by the overlays, it is also resolved once,
+     * and a tenant configuration whose overlay does not change any value the base refers to only resolves
+     * its overlay on top of the resolved base.
+     *
+     * @see TenantConfigurations
+     */
+    public TenantConfigurations<T> forTenants(ConfigurationSourceProvider sourceProvider, String basePath, ConfigurationBuildContext context) {
+        if (context.getEnvironments().isEmpty()) {
+            throw new IllegalArgumentException("The context has no environments, and at least one is required");
+        }
+        ConfigurationBuildTimings baseTimings = new ConfigurationBuildTimings();
+        Set<String> keptEnvironments = context.isPruningEnvironments() ? environmentKeys(context.getEnvironments()) : null;
+        List<Config> loadedSources = loadConfigs(sourceProvider, sourcePaths(basePath, context.getSecretPath()), keptEnvironments, baseTimings);
+        Config base = resolveWithOverrides(loadedSources.get(0), basePath, context, baseTimings);
+        Config reducedBase = reduce(context.getEnvironments(), base, basePath, baseTimings);
+        Optional<Config> reducedSecrets = loadedSources.stream().skip(1).findFirst()
+                .map(secrets -> reduce(context.getEnvironments(), secrets, context.getSecretPath().get(), baseTimings));
+        return new TenantConfigurations<>(this, sourceProvider, basePath, context, reducedBase, reducedSecrets, baseTimings);
+    }
+
+    /**
+     * Load a tenant overlay, and resolve it against the overrides of the context.
+     */
+    Config loadOverlay(ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context, ConfigurationBuildTimings timings) {
+        Set<String> keptEnvironments = context.isPruningEnvironments() ? environmentKeys(context.getEnvironments()) : null;
+        return resolveWithOverrides(loadConfig(sourceProvider, path, keptEnvironments, timings), path, context, timings);
+    }
 
-        Config configWithSecrets = firstAvailableSystemProperty(SECRET_KEY)
-                .map(secretsPath -> loadConfig(sourceProvider, secretsPath))
-                .map(secretsConfig -> reduceToEnvironmentSpecific(environments, secretsConfig).withFallback(envSpecificConfig))
-                .orElse(envSpecificConfig);
+    /**
+     * Resolve and bind the configuration of a tenant, already merged from its reduced overlay, the base and
+     * the secret config.
+     *
+     * @param unresolvedNodes the number of nodes which are not already resolved, for the timings.
+     */
+    ResolvedConfiguration<T> buildOverlaid(
+            Config overlaid, long unresolvedNodes, Set<String> secretValuePaths, String path,
+            ConfigurationBuildContext context, ConfigurationBuildTimings timings) throws IOException, ConfigurationException {
 
-        ConfigObject rootConfigObject = configWithSecrets.resolve().withoutPath("variables").root();
+        ConfigObject rootConfigObject = timings.time(RESOLVE, null, unresolvedNodes, () -> overlaid.resolve().withoutPath("variables").root());
+        return new ResolvedConfiguration<>(path, rootConfigObject, bind(ConfigJsonNodes.toJsonNode(rootConfigObject, mapper.getNodeFactory()), path, timings), timings, context, secretValuePaths);
+    }
 
-        logConfig(configWithSecrets, rootConfigObject);
+    private static List<String> sourcePaths(String path, Optional<String> secretsPath) {
+        return secretsPath.map(secrets -> List.of(path, secrets)).orElseGet(() -> List.of(path));
+    }
 
-        String configJsonString = rootConfigObject.render(ConfigRenderOptions.concise());
-        return super.build(str -> new ByteArrayInputStream(configJsonString.getBytes(UTF_8)), path);
+    private T bind(JsonNode config, String path, ConfigurationBuildTimings timings) throws IOException, ConfigurationException {
+        long nodes = nodesIn(config);
+        ConfigurationBuildTimings.PhaseTimer bindTimer = timings.start(BIND, path);
+        validator.startTiming(timings, nodes);
+        try {
+            T configuration = build(config, path);
+            bindTimer.stop(nodes);
+            return configuration;
+        } finally {
+            validator.stopTiming();
+        }
     }
 
-    private Config loadConfig(ConfigurationSourceProvider sourceProvider, String path) {
-        try (InputStream source = sourceProvider.open(path)) {
-            return path.endsWith(".yml") ? loadYamlConfig(source) : loadConfig(source);
+    private static byte[] readSource(ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildTimings timings) {
+        try {
+            return timings.time(OPEN, path, () -> {
+                try (InputStream source = sourceProvider.open(path)) {
+                    return source.readAllBytes();
+                }
+            }, content -> content.length);
         } catch (IOException e) {
             throw new RuntimeException(
                     "Unable to load config from '" + path + "', because " +
@@ -100,36 +463,164 @@ public class TypeSafeConfigurationFactory<T> extends YamlConfigurationFactory<T>
         }
     }
 
-    private Config loadConfig(InputStream input) {
-        InputStreamReader inputReader = new InputStreamReader(input, UTF_8);
-        return ConfigFactory.parseReader(inputReader, ConfigParseOptions.defaults().setAllowMissing(false));
+    /**
+     * Load and parse a source, including any other sources it includes.
+     *
+     * @see IncludingSourceLoader
+     */
+    private static Config loadConfig(ConfigurationSourceProvider sourceProvider, String path, Set<String> keptEnvironments, ConfigurationBuildTimings timings) {
+        return new IncludingSourceLoader(sourceProvider, keptEnvironments, timings).load(path);
     }
 
-    private Config loadYamlConfig(InputStream input) throws IOException {
-        JsonNode node = mapper.readTree(yamlFactory.createParser(input));
-        String jsonString = mapper.writeValueAsString(node);
-        Config preConfig = ConfigFactory.parseString(jsonString, ConfigParseOptions.defaults().setAllowMissing(false));
-        String render = preConfig.root().render(ConfigRenderOptions.defaults().setJson(false));
-        return ConfigFactory.parseString(render.replaceAll("=\\s?\"([^$]?\\$.*?)\"", "=$1"), ConfigParseOptions.defaults().setSyntax(ConfigSyntax.CONF));
+    /**
+     * Load and parse sources concurrently, e.g. the main and the secret config, with one loader,
+     * so that any source included by several of them is loaded and parsed only once.
+     *
+     * @see IncludingSourceLoader
+     */
+    private static List<Config> loadConfigs(
+            ConfigurationSourceProvider sourceProvider, List<String> paths, Set<String> keptEnvironments, ConfigurationBuildTimings timings) {
+        IncludingSourceLoader loader = new IncludingSourceLoader(sourceProvider, keptEnvironments, timings);
+        return ConcurrentSourceLoading.loadAll(paths, loader::load);
     }
 
-    private void logConfig(Config finalConfig, ConfigObject rootConfigObject) {
+    /**
+     * Parse the content of a source, in either .conf or .yml format as given by its path.
+     */
+    static Config parse(byte[] content, String path) throws IOException {
+        return parse(UTF_8.decode(ByteBuffer.wrap(content)), path, null, null);
+    }
+
+    /**
+     * Parse already decoded content, reading directly from the array of the given buffer.
+     *
+     * @param includer the includer for any {@code include} statements in .conf content, or {@code null}
+     *                 for the default includer of Typesafe Config.
+     */
+    static Config parse(CharBuffer content, String path, Set<String> keptEnvironments, ConfigIncluder includer) throws IOException {
+        char[] chars = content.array();
+        int offset = content.arrayOffset() + content.position();
+        int length = content.remaining();
+        if (length > 0 && chars[offset] == BYTE_ORDER_MARK) {
+            offset++;
+            length--;
+        }
+        if (isYaml(path)) {
+            try (JsonParser yamlParser = yamlFactory.createParser(chars, offset, length)) {
+                return ConfigTreeReader.read(yamlParser, path, keptEnvironments).toConfig();
+            }
+        }
+        ConfigParseOptions options = ConfigParseOptions.defaults().setAllowMissing(false).setOriginDescription(path).setSyntaxFromFilename(path);
+        return pruneEnvironments(
+                ConfigFactory.parseReader(new CharArrayReader(chars, offset, length), includer != null ? options.setIncluder(includer) : options),
+                keptEnvironments);
+    }
+
+    static boolean isYaml(String path) {
+        return path.endsWith(".yml");
+    }
+
+    /**
+     * @return the keys in the {@code environments} block of the given environments,
+     *         i.e. the first element of each environment if it is a path.
+     */
+    static Set<String> environmentKeys(List<String> environments) {
+        return environments.stream().map(environment -> ConfigUtil.splitPath(environment).get(0)).collect(toSet());
+    }
+
+    /**
+     * Remove the blocks of environments other than the given environments from a parsed config.
+     *
+     * @param keptEnvironments the environments to keep, or {@code null} to keep all.
+     */
+    static Config pruneEnvironments(Config config, Set<String> keptEnvironments) {
+        ConfigValue environmentsBlock = config.root().get(ENVIRONMENTS_CONFIG_KEY);
+        if (keptEnvironments == null || !(environmentsBlock instanceof ConfigObject)) {
+            return config;
+        }
+        ConfigObject prunedEnvironments = (ConfigObject) environmentsBlock;
+        try {
+            for (String environment : prunedEnvironments.keySet()) {
+                if (!keptEnvironments.contains(environment)) {
+                    prunedEnvironments = prunedEnvironments.withoutKey(environment);
+                }
+            }
+        } catch (ConfigException.NotResolved e) {
+            // the environments block is merged with a substitution, and its environments are not known until resolved
+            return config;
+        }
+        return config.root().withValue(ENVIRONMENTS_CONFIG_KEY, prunedEnvironments).toConfig();
+    }
+
+    private void logConfig(ConfigObject rootConfigObject, Set<String> secretValuePaths) {
         String configFactoryLogKey = "logging.loggers.\"" + getClass().getName() + "\"";
+        Config finalConfig = rootConfigObject.toConfig();
         if (finalConfig.hasPath(configFactoryLogKey)) {
             if (finalConfig.getString(configFactoryLogKey).equalsIgnoreCase("debug")) {
-                log.debug(rootConfigObject.render(ConfigRenderOptions.defaults().setComments(true).setOriginComments(false)));
+                ConfigDump.of(rootConfigObject, secretValuePaths).logTo(log);
             }
         }
     }
 
-    private static Optional<String> firstAvailableSystemProperty(String ... propertyNames) {
-        return Stream.of(propertyNames)
-            .map(System::getProperty)
-            .filter(property -> property != null && !property.isEmpty())
-            .findFirst();
+    /**
+     * A resolved config tree, which is ready to be bound.
+     */
+    private static final class ResolvedTree {
+        final ConfigObject configObject;
+        final Set<String> secretValuePaths;
+        final CompiledConfigCache.Entry compiledConfig;
+        final CompiledConfigCache cache;
+        final CompiledConfigCache.Key cacheKey;
+        final ConfigurationBuildTimings timings;
+        final ConfigurationBuildContext context;
+
+        /**
+         * @param secretValuePaths the paths set by the secret config.
+         * @param compiledConfig the tree as read from the compiled config cache, or {@code null} if it is not cached.
+         * @param cache the cache to put the tree in when converted for binding, or {@code null} to not cache it.
+         */
+        ResolvedTree(ConfigObject configObject, Set<String> secretValuePaths, CompiledConfigCache.Entry compiledConfig,
+                     CompiledConfigCache cache, CompiledConfigCache.Key cacheKey, ConfigurationBuildTimings timings, ConfigurationBuildContext context) {
+            this.configObject = configObject;
+            this.secretValuePaths = secretValuePaths;
+            this.compiledConfig = compiledConfig;
+            this.cache = cache;
+            this.cacheKey = cacheKey;
+            this.timings = timings;
+            this.context = context;
+        }
+    }
+
+    /**
+     * A config tree being resolved in the background by {@link #resolveEarly(ConfigurationSourceProvider, String, ConfigurationBuildContext)}.
+     */
+    static final class EarlyResolution {
+        private final ConfigurationSourceProvider sourceProvider;
+        private final String path;
+        private final ConfigurationBuildContext context;
+        private final CompletableFuture<ResolvedTree> resolving;
+
+        EarlyResolution(ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context, CompletableFuture<ResolvedTree> resolving) {
+            this.sourceProvider = sourceProvider;
+            this.path = path;
+            this.context = context;
+            this.resolving = resolving;
+        }
+
+        boolean isFor(ConfigurationSourceProvider sourceProvider, String path, ConfigurationBuildContext context) {
+            return this.sourceProvider == sourceProvider && this.path.equals(path) && this.context.hasSameInputsAs(context);
+        }
+
+        /**
+         * Wait for the config tree to be resolved, and throw any exception from resolving it
+         * as-is, i.e. the same exception as if it was resolved by the calling thread.
+         */
+        ResolvedTree join() {
+            return ConcurrentSourceLoading.join(resolving);
+        }
     }
 
-    private static Config reduceToEnvironmentSpecific(List<String> environments, Config config) {
+    static Config reduceToEnvironmentSpecific(List<String> environments, Config config) {
         Config envConfig = environments.stream()
                 .map(environment -> ENVIRONMENTS_CONFIG_KEY + "." + environment)
                 .filter(environmentKey -> config.hasPath(environmentKey))
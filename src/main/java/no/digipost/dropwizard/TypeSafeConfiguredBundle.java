@@ -15,12 +15,24 @@
  */
 package no.digipost.dropwizard;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.configuration.ConfigurationFactory;
 import io.dropwizard.configuration.ConfigurationSourceProvider;
-import io.dropwizard.configuration.FileConfigurationSourceProvider;
 import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
 import io.dropwizard.core.ConfiguredBundle;
 import io.dropwizard.core.setup.Bootstrap;
+import io.dropwizard.core.setup.Environment;
+import jakarta.validation.Validator;
 import no.digipost.dropwizard.configuration.ConfigurationSourceProviderWithFallback;
+import no.digipost.dropwizard.configuration.FileChannelConfigurationSourceProvider;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 /**
  * Dropwizard {@link ConfiguredBundle} to support configuration with
@@ -30,20 +42,161 @@ import no.digipost.dropwizard.configuration.ConfigurationSourceProviderWithFallb
  */
 public class TypeSafeConfiguredBundle<C> implements ConfiguredBundle<C> {
 
+    /**
+     * The property prefix which Dropwizard gives the configuration factory when the application is run
+     * with a configuration file, and which is also used for building outside of Dropwizard's commands.
+     */
+    static final String PROPERTY_PREFIX = "dw";
+
     private final ConfigurationSourceProvider configurationSourceProvider;
+    /**
+     * The paths of every source opened while building the configuration, which are watched for changes when reloading.
+     */
+    private final Set<String> openedSourcePaths = new CopyOnWriteArraySet<>();
+    private Duration reloadPollInterval;
+    private String earlyBuildPath;
+    private String[] configDumpSensitivePaths;
+    private boolean validateEnvironmentsCommand;
+    private TypeSafeConfigurationFactory.EarlyResolution earlyResolution;
+    private TypeSafeConfigurationFactory<?> configurationFactory;
+    private ReloadingConfiguration<C> reloadingConfiguration;
 
     public TypeSafeConfiguredBundle() {
-        this(new ConfigurationSourceProviderWithFallback(new FileConfigurationSourceProvider(), new ResourceConfigurationSourceProvider()));
+        this(new ConfigurationSourceProviderWithFallback(new FileChannelConfigurationSourceProvider(), new ResourceConfigurationSourceProvider()));
     }
 
     public TypeSafeConfiguredBundle(ConfigurationSourceProvider configurationSourceProvider) {
         this.configurationSourceProvider = configurationSourceProvider;
     }
 
+    /**
+     * Reload the configuration when any of its sources are changed. The reloaded configuration
+     * is available from {@link #getReloadingConfiguration()}.
+     *
+     * @param pollInterval how often to check for changes in the configuration sources.
+     * @return this bundle
+     */
+    public TypeSafeConfiguredBundle<C> withReloading(Duration pollInterval) {
+        this.reloadPollInterval = pollInterval;
+        return this;
+    }
+
+    /**
+     * Start loading and resolving the configuration in the background when this bundle is initialized,
+     * so that it is done while the rest of the application is bootstrapped. The configuration factory
+     * then only has to bind it to the configuration class when Dropwizard asks it to build the
+     * configuration, and any failure is thrown from there, the same as without an early build.
+     * <p>
+     * The early build is only used if the application is run with the given path, and is otherwise
+     * discarded, e.g. when running a command which does not take a configuration file.
+     *
+     * @param path the path of the configuration file the application is run with.
+     * @return this bundle
+     */
+    public TypeSafeConfiguredBundle<C> withEarlyBuild(String path) {
+        this.earlyBuildPath = path;
+        return this;
+    }
+
+    /**
+     * Register the admin task {@value ConfigDumpTask#NAME}, which writes a redacted dump of the configuration currently in use.
+     *
+     * @param sensitivePaths paths which are always redacted, in addition to values from the secret config,
+     *                       and the paths redacted by {@link ConfigDump}.
+     * @return this bundle
+     */
+    public TypeSafeConfiguredBundle<C> withConfigDumpTask(String ... sensitivePaths) {
+        this.configDumpSensitivePaths = sensitivePaths;
+        return this;
+    }
+
+    /**
+     * Register the command {@code validate-environments}, which builds and validates the configuration
+     * for every environment, reading the system properties with the same property prefix as the
+     * configuration factory of this bundle.
+     *
+     * @see ValidateEnvironmentsCommand
+     * @return this bundle
+     */
+    public TypeSafeConfiguredBundle<C> withValidateEnvironmentsCommand() {
+        this.validateEnvironmentsCommand = true;
+        return this;
+    }
+
     @Override
     public void initialize(Bootstrap<?> bootstrap) {
-        bootstrap.setConfigurationFactoryFactory(TypeSafeConfigurationFactory::new);
-        bootstrap.setConfigurationSourceProvider(configurationSourceProvider);
+        bootstrap.setConfigurationFactoryFactory(this::createConfigurationFactory);
+        ConfigurationSourceProvider sourceProvider = reloadPollInterval == null ? configurationSourceProvider : path -> {
+            openedSourcePaths.add(path);
+            return configurationSourceProvider.open(path);
+        };
+        bootstrap.setConfigurationSourceProvider(sourceProvider);
+        if (earlyBuildPath != null) {
+            earlyResolution = TypeSafeConfigurationFactory.resolveEarly(sourceProvider, earlyBuildPath, ConfigurationBuildContext.fromSystemProperties(PROPERTY_PREFIX));
+        }
+        if (validateEnvironmentsCommand) {
+            bootstrap.addCommand(new ValidateEnvironmentsCommand<>(bootstrap.getApplication().getConfigurationClass(), PROPERTY_PREFIX));
+        }
+    }
+
+    private <T> ConfigurationFactory<T> createConfigurationFactory(Class<T> klass, Validator validator, ObjectMapper objectMapper, String propertyPrefix) {
+        TypeSafeConfigurationFactory<T> factory = new TypeSafeConfigurationFactory<>(klass, validator, objectMapper, propertyPrefix);
+        if (earlyResolution != null) {
+            factory.useEarlyResolution(earlyResolution);
+            earlyResolution = null;
+        }
+        this.configurationFactory = factory;
+        return factory;
+    }
+
+    @Override
+    public void run(C configuration, Environment environment) throws Exception {
+        if (configurationFactory != null && configurationFactory.lastBuilt() != null) {
+            registerBuildTimings(configurationFactory.lastBuilt().getBuildTimings(), environment.metrics());
+        }
+        if (configDumpSensitivePaths != null && configurationFactory != null) {
+            TypeSafeConfigurationFactory<?> factory = configurationFactory;
+            environment.admin().addTask(new ConfigDumpTask(factory::lastBuilt, configDumpSensitivePaths));
+        }
+        if (reloadPollInterval != null && configurationFactory != null && configurationFactory.lastBuilt() != null) {
+            @SuppressWarnings("unchecked")
+            TypeSafeConfigurationFactory<C> factory = (TypeSafeConfigurationFactory<C>) configurationFactory;
+            ResolvedConfiguration<C> built = factory.lastBuilt();
+            reloadingConfiguration = new ReloadingConfiguration<>(
+                    factory, configurationSourceProvider, built.getPath(), openedSourcePaths, built, reloadPollInterval);
+            environment.lifecycle().manage(reloadingConfiguration);
+        }
+    }
+
+    /**
+     * Register the time spent in each phase of building the configuration as timers named
+     * {@code no.digipost.dropwizard.TypeSafeConfigurationFactory.build.<phase>}, and the sizes
+     * of the inputs as histograms named {@code ...build.<phase>.<size unit>}. Phases for a single
+     * source are also registered with the source appended to the names.
+     */
+    private static void registerBuildTimings(ConfigurationBuildTimings timings, MetricRegistry metrics) {
+        for (ConfigurationBuildTimings.PhaseTiming timing : timings.getPhaseTimings()) {
+            String phase = timing.phase.name().toLowerCase(Locale.ROOT);
+            metrics.timer(name(TypeSafeConfigurationFactory.class, "build", phase)).update(timing.duration);
+            metrics.histogram(name(TypeSafeConfigurationFactory.class, "build", phase, timing.phase.sizeUnit)).update(timing.size);
+            if (timing.source != null) {
+                metrics.timer(name(TypeSafeConfigurationFactory.class, "build", phase, timing.source)).update(timing.duration);
+                metrics.histogram(name(TypeSafeConfigurationFactory.class, "build", phase, timing.phase.sizeUnit, timing.source)).update(timing.size);
+            }
+        }
+    }
+
+    /**
+     * @return the {@link ReloadingConfiguration} holding the current configuration, which is available
+     *         after this bundle has been run, if reloading is enabled with {@link #withReloading(Duration)}.
+     * @throws IllegalStateException if reloading is not enabled, or the bundle has not been run.
+     */
+    public ReloadingConfiguration<C> getReloadingConfiguration() {
+        if (reloadingConfiguration == null) {
+            throw new IllegalStateException(
+                    "Reloading configuration is not available. It must be enabled with withReloading(..), and is available after the bundle has been run.");
+        }
+        return reloadingConfiguration;
     }
 
 }
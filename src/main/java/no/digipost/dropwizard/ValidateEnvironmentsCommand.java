@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import io.dropwizard.core.cli.Command;
+import io.dropwizard.core.cli.ConfiguredCommand;
+import io.dropwizard.core.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command which builds and validates the configuration for every environment in the
+ * {@code environments} block of the configuration file, using
+ * {@link TypeSafeConfigurationFactory#validateAllEnvironments(io.dropwizard.configuration.ConfigurationSourceProvider, String)}.
+ * Fails with a report of the errors for each invalid environment.
+ * <p>
+ * This is not a {@link ConfiguredCommand}, as that would build the configuration for the
+ * environment given by the {@code env} system property before the command is run.
+ * The command is registered by {@link TypeSafeConfiguredBundle#withValidateEnvironmentsCommand()},
+ * or explicitly with the property prefix of the configuration factory:
+ *
+ * <pre>
+ * {@code
+ * bootstrap.addCommand(new ValidateEnvironmentsCommand<>(MyConfiguration.class, "dw"));
+ * }
+ * </pre>
+ *
+ * @param <C> The type of config object
+ */
+public class ValidateEnvironmentsCommand<C> extends Command {
+
+    private static final Logger log = LoggerFactory.getLogger(ValidateEnvironmentsCommand.class);
+
+    private final Class<C> configurationClass;
+    private final String propertyPrefix;
+
+    /**
+     * @param configurationClass the type of config object.
+     * @param propertyPrefix the property prefix of the configuration factory, which system properties
+     *                       may be given with, as for {@link ConfigurationBuildContext#fromSystemProperties(String)}.
+     */
+    public ValidateEnvironmentsCommand(Class<C> configurationClass, String propertyPrefix) {
+        super("validate-environments", "Validates the configuration file for every environment");
+        this.configurationClass = configurationClass;
+        this.propertyPrefix = propertyPrefix;
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("file").help("application configuration file");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        TypeSafeConfigurationFactory<C> configurationFactory = new TypeSafeConfigurationFactory<>(
+                configurationClass, bootstrap.getValidatorFactory().getValidator(), bootstrap.getObjectMapper(), propertyPrefix);
+        EnvironmentsValidationReport report = configurationFactory.validateAllEnvironments(
+                bootstrap.getConfigurationSourceProvider(), namespace.getString("file"));
+        if (!report.isValid()) {
+            throw new IllegalStateException(report.toString());
+        }
+        log.info("{}", report);
+    }
+}
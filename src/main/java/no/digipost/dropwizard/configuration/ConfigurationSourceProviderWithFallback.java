@@ -64,15 +64,19 @@ public class ConfigurationSourceProviderWithFallback implements ConfigurationSou
             try {
                 return fallback.open(path);
             } catch (IOException exceptionOnFallbackProvider) {
-                ConfigurationSourceNotFoundException e = new ConfigurationSourceNotFoundException(
-                        "No " + ConfigurationSourceProvider.class.getSimpleName() + " were able to resolve configuration from " +
-                        path + ", because " + exceptionOnMainProvider.getMessage() + ", and " + exceptionOnFallbackProvider.getMessage(), exceptionOnMainProvider);
-                e.addSuppressed(exceptionOnFallbackProvider);
-                throw e;
+                throw notFound(path, exceptionOnMainProvider, exceptionOnFallbackProvider);
             } catch (RuntimeException e) {
                 e.addSuppressed(exceptionOnMainProvider);
                 throw e;
             }
         }
     }
+
+    static ConfigurationSourceNotFoundException notFound(String path, IOException exceptionOnMainProvider, IOException exceptionOnFallbackProvider) {
+        ConfigurationSourceNotFoundException e = new ConfigurationSourceNotFoundException(
+                "No " + ConfigurationSourceProvider.class.getSimpleName() + " were able to resolve configuration from " +
+                path + ", because " + exceptionOnMainProvider.getMessage() + ", and " + exceptionOnFallbackProvider.getMessage(), exceptionOnMainProvider);
+        e.addSuppressed(exceptionOnFallbackProvider);
+        return e;
+    }
 }
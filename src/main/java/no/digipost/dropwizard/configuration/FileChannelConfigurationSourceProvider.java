@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard.configuration;
+
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads a configuration file fully through a {@link FileChannel}, as an alternative to the
+ * {@link FileConfigurationSourceProvider} of Dropwizard. The file is read into a heap buffer of
+ * exactly the size of the file, and is available as a {@link ByteBufferInputStream}, so
+ * {@link no.digipost.dropwizard.TypeSafeConfigurationFactory} parses the content directly
+ * from its buffer. Files are never memory-mapped, as a mapped file which is truncated while
+ * it is parsed, e.g. when it is rewritten by deployment tooling, crashes the JVM.
+ */
+public class FileChannelConfigurationSourceProvider implements ConfigurationSourceProvider {
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return new ByteBufferInputStream(read(Paths.get(path)));
+    }
+
+    private ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be a configuration file, " + size + " bytes");
+            }
+            ByteBuffer content = ByteBuffer.allocate((int) size);
+            while (content.hasRemaining()) {
+                if (channel.read(content) < 0) {
+                    throw new EOFException(file + " was truncated while reading it, expected " + size + " bytes, but got " + content.position());
+                }
+            }
+            return content.flip();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard.configuration;
+
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Resolves a configuration source from an ordered list of providers, where the first provider has
+ * the highest priority. The first provider is tried immediately, and if it has not resolved the source
+ * within the {@code hedgeDelay}, the next provider is tried in parallel, and so on. A provider failing
+ * causes the next one to be tried immediately.
+ * <p>
+ * The source from the highest priority provider is used, i.e. a source from a lower priority provider is
+ * only used immediately if every higher priority provider has failed. At the {@code deadline}, the source
+ * from the highest priority provider which has resolved it so far is used. Sources from any other providers,
+ * including those resolving the source after it has been decided which to use, are closed.
+ * <p>
+ * This is useful when sources may be available from both a slow or unreliable location, e.g. a network
+ * file system, and from a reliable but less preferred location:
+ *
+ * <pre>
+ * {@code
+ * new HedgedConfigurationSourceProvider(Duration.ofMillis(200), Duration.ofSeconds(2),
+ *     new FileConfigurationSourceProvider(),
+ *     new ResourceConfigurationSourceProvider()
+ * )
+ * }
+ * </pre>
+ */
+public class HedgedConfigurationSourceProvider implements ConfigurationSourceProvider {
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "configuration-source-hedging-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long hedgeDelayNanos;
+    private final Duration deadline;
+    private final List<ConfigurationSourceProvider> providers;
+
+    public HedgedConfigurationSourceProvider(Duration hedgeDelay, Duration deadline, ConfigurationSourceProvider ... providers) {
+        this(hedgeDelay, deadline, List.of(providers));
+    }
+
+    public HedgedConfigurationSourceProvider(Duration hedgeDelay, Duration deadline, List<ConfigurationSourceProvider> providers) {
+        if (providers.isEmpty()) {
+            throw new IllegalArgumentException("At least one " + ConfigurationSourceProvider.class.getSimpleName() + " is required");
+        }
+        this.hedgeDelayNanos = hedgeDelay.toNanos();
+        this.deadline = deadline;
+        this.providers = List.copyOf(providers);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ConfigurationSourceNotFoundException if every provider fails with {@link IOException}, or does not resolve
+     *                                              a configuration source from the given {@code path} within the deadline.
+     *                                              The thrown exception will contain the exception from the first provider as cause,
+     *                                              and the exceptions from the other providers as suppressed.
+     */
+    @Override
+    public final InputStream open(String path) throws IOException {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + deadline.toNanos();
+        BlockingQueue<Integer> completed = new LinkedBlockingQueue<>();
+        List<CompletableFuture<InputStream>> attempts = new ArrayList<>(providers.size());
+        long nextHedgeNanos = startNanos + hedgeDelayNanos;
+        try {
+            while (true) {
+                int highestPriorityPending = -1;
+                for (int i = 0; i < attempts.size(); i++) {
+                    CompletableFuture<InputStream> attempt = attempts.get(i);
+                    if (!attempt.isDone()) {
+                        highestPriorityPending = i;
+                        break;
+                    } else if (!attempt.isCompletedExceptionally()) {
+                        return use(i, attempts);
+                    }
+                }
+                long now = System.nanoTime();
+                boolean allStartedHaveFailed = highestPriorityPending < 0;
+                if (attempts.size() < providers.size() && (allStartedHaveFailed || now - nextHedgeNanos >= 0)) {
+                    attempts.add(start(attempts.size(), path, completed));
+                    nextHedgeNanos = now + hedgeDelayNanos;
+                    continue;
+                } else if (allStartedHaveFailed) {
+                    throw notFound(path, attempts);
+                } else if (now - deadlineNanos >= 0) {
+                    for (int i = highestPriorityPending + 1; i < attempts.size(); i++) {
+                        CompletableFuture<InputStream> attempt = attempts.get(i);
+                        if (attempt.isDone() && !attempt.isCompletedExceptionally()) {
+                            return use(i, attempts);
+                        }
+                    }
+                    throw notFound(path, attempts);
+                }
+                long waitUntilNanos = attempts.size() < providers.size() && nextHedgeNanos - deadlineNanos < 0 ? nextHedgeNanos : deadlineNanos;
+                completed.poll(waitUntilNanos - now, NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeAll(attempts, -1);
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while resolving configuration from " + path);
+            interrupted.initCause(e);
+            throw interrupted;
+        } catch (IOException | RuntimeException | Error e) {
+            closeAll(attempts, -1);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<InputStream> start(int priority, String path, BlockingQueue<Integer> completed) {
+        ConfigurationSourceProvider provider = providers.get(priority);
+        CompletableFuture<InputStream> attempt = CompletableFuture.supplyAsync(() -> {
+            try {
+                return provider.open(path);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        attempt.whenComplete((source, failure) -> completed.add(priority));
+        return attempt;
+    }
+
+    private static InputStream use(int priority, List<CompletableFuture<InputStream>> attempts) {
+        closeAll(attempts, priority);
+        return attempts.get(priority).join();
+    }
+
+    private static void closeAll(List<CompletableFuture<InputStream>> attempts, int except) {
+        for (int i = 0; i < attempts.size(); i++) {
+            if (i != except) {
+                attempts.get(i).thenAccept(HedgedConfigurationSourceProvider::closeQuietly);
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream source) {
+        try {
+            source.close();
+        } catch (IOException e) {
+            // an unused source, which failure to close is of no consequence
+        }
+    }
+
+    private IOException notFound(String path, List<CompletableFuture<InputStream>> attempts) {
+        List<Throwable> failures = new ArrayList<>(providers.size());
+        for (int i = 0; i < providers.size(); i++) {
+            failures.add(i < attempts.size() ? failureOf(attempts.get(i)) : new TimeoutException(
+                    providers.get(i).getClass().getSimpleName() + " was not tried within " + deadline));
+        }
+        for (Throwable failure : failures) {
+            if (failure instanceof RuntimeException || failure instanceof Error) {
+                failures.stream().filter(other -> other != failure).forEach(failure::addSuppressed);
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw (RuntimeException) failure;
+            }
+        }
+        StringBuilder message = new StringBuilder("No " + ConfigurationSourceProvider.class.getSimpleName() + " were able to resolve configuration from " + path + ", because ");
+        for (int i = 0; i < failures.size(); i++) {
+            message.append(i == 0 ? "" : ", and ").append(failures.get(i).getMessage());
+        }
+        ConfigurationSourceNotFoundException notFound = new ConfigurationSourceNotFoundException(message.toString(), failures.get(0));
+        failures.stream().skip(1).forEach(notFound::addSuppressed);
+        return notFound;
+    }
+
+    private Throwable failureOf(CompletableFuture<InputStream> attempt) {
+        if (!attempt.isDone()) {
+            return new TimeoutException("Did not resolve within " + deadline);
+        }
+        try {
+            attempt.join();
+            throw new IllegalStateException("Expected failed attempt to resolve configuration source");
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+}
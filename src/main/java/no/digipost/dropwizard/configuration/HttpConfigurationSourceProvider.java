@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard.configuration;
+
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Loads configuration from HTTP(S) URLs, and keeps a copy of each loaded configuration in a local
+ * cache directory. Each request is conditional, with the {@code ETag} and {@code Last-Modified} of the
+ * cached copy, so an unchanged configuration is not downloaded again, but read from the cached copy.
+ * The body of a changed configuration is streamed directly to the reader of the configuration, while
+ * it is written to the cache.
+ * <p>
+ * If the server can not be reached, or responds with an error, the cached copy is used if it was
+ * last confirmed to be up to date no longer ago than the {@code maxStaleness}. Paths which are not
+ * HTTP(S) URLs are not found, so this provider can be composed with e.g. a provider for files using
+ * {@link ConfigurationSourceProviderWithFallback}.
+ */
+public class HttpConfigurationSourceProvider implements ConfigurationSourceProvider {
+
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final Logger log = LoggerFactory.getLogger(HttpConfigurationSourceProvider.class);
+    private static final String CACHE_FILE_SUFFIX = ".http-config";
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final Path cacheDirectory;
+    private final Duration maxStaleness;
+
+    /**
+     * @param cacheDirectory the directory to keep the cached copies of configurations in.
+     * @param maxStaleness how long ago a cached copy may have been confirmed to be up to date,
+     *                     and still be used if the server can not be reached.
+     */
+    public HttpConfigurationSourceProvider(Path cacheDirectory, Duration maxStaleness) {
+        this(HttpClient.newBuilder().connectTimeout(DEFAULT_REQUEST_TIMEOUT).followRedirects(HttpClient.Redirect.NORMAL).build(),
+                DEFAULT_REQUEST_TIMEOUT, cacheDirectory, maxStaleness);
+    }
+
+    /**
+     * @param client the client to send requests with.
+     * @param requestTimeout the timeout of each request, until the response headers are received.
+     * @param cacheDirectory the directory to keep the cached copies of configurations in.
+     * @param maxStaleness how long ago a cached copy may have been confirmed to be up to date,
+     *                     and still be used if the server can not be reached.
+     */
+    public HttpConfigurationSourceProvider(HttpClient client, Duration requestTimeout, Path cacheDirectory, Duration maxStaleness) {
+        this.client = client;
+        this.requestTimeout = requestTimeout;
+        this.cacheDirectory = cacheDirectory;
+        this.maxStaleness = maxStaleness;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        URI uri = httpUri(path);
+        Path cacheFile = cacheDirectory.resolve(digest(uri.toString()) + CACHE_FILE_SUFFIX);
+        Optional<CachedConfig> cached = CachedConfig.read(cacheFile);
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(requestTimeout).GET();
+        cached.ifPresent(config -> {
+            if (!config.etag.isEmpty()) {
+                request.header("If-None-Match", config.etag);
+            }
+            if (!config.lastModified.isEmpty()) {
+                request.header("If-Modified-Since", config.lastModified);
+            }
+        });
+
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            return fromCacheIfFresh(uri, cached, cacheFile, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading configuration from " + uri, e);
+        }
+
+        int status = response.statusCode();
+        if (status == 304 && cached.isPresent()) {
+            response.body().close();
+            Files.setLastModifiedTime(cacheFile, FileTime.from(Instant.now()));
+            log.debug("Configuration from {} is not modified, using cached copy {}", uri, cacheFile);
+            return cached.get().openBody();
+        } else if (status == 200) {
+            String etag = response.headers().firstValue("ETag").orElse("");
+            String lastModified = response.headers().firstValue("Last-Modified").orElse("");
+            return new CachingInputStream(response.body(), cacheFile, etag, lastModified);
+        }
+        response.body().close();
+        IOException failure = new IOException("Unable to load configuration from " + uri + ", got HTTP status " + status);
+        if (status == 404 || status == 410) {
+            throw new ConfigurationSourceNotFoundException(failure.getMessage(), null);
+        }
+        return fromCacheIfFresh(uri, cached, cacheFile, failure);
+    }
+
+    private InputStream fromCacheIfFresh(URI uri, Optional<CachedConfig> cached, Path cacheFile, IOException failure) throws IOException {
+        if (cached.isEmpty()) {
+            throw failure;
+        }
+        Instant confirmed = cached.get().confirmed;
+        Duration staleness = Duration.between(confirmed, Instant.now());
+        if (staleness.compareTo(maxStaleness) > 0) {
+            throw new IOException(failure.getMessage() + ", and the cached copy " + cacheFile +
+                    " was last confirmed to be up to date " + staleness + " ago, which is more than " + maxStaleness, failure);
+        }
+        log.warn("Using cached copy {} of configuration from {}, last confirmed to be up to date {} ago, because {}: '{}'",
+                cacheFile, uri, staleness, failure.getClass().getSimpleName(), failure.getMessage());
+        return cached.get().openBody();
+    }
+
+    private static URI httpUri(String path) throws IOException {
+        try {
+            URI uri = new URI(path);
+            if ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme())) {
+                return uri;
+            }
+        } catch (URISyntaxException e) {
+            // not an URL, and so not found below
+        }
+        throw new ConfigurationSourceNotFoundException(path + " is not an HTTP(S) URL", null);
+    }
+
+    private static String digest(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every Java platform", e);
+        }
+    }
+
+    /**
+     * A cached copy of a configuration, stored as its {@code ETag} and {@code Last-Modified}, followed by
+     * the body, in a single file, which is replaced atomically. The last modified time of the file is when
+     * the copy was last confirmed to be up to date.
+     */
+    private static final class CachedConfig {
+        final Path file;
+        final String etag;
+        final String lastModified;
+        final Instant confirmed;
+
+        static Optional<CachedConfig> read(Path file) {
+            try (DataInputStream input = new DataInputStream(Files.newInputStream(file))) {
+                return Optional.of(new CachedConfig(file, input.readUTF(), input.readUTF(), Files.getLastModifiedTime(file).toInstant()));
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable cached configuration {}, because {}: '{}'", file, e.getClass().getSimpleName(), e.getMessage());
+                return Optional.empty();
+            }
+        }
+
+        CachedConfig(Path file, String etag, String lastModified, Instant confirmed) {
+            this.file = file;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.confirmed = confirmed;
+        }
+
+        InputStream openBody() throws IOException {
+            DataInputStream input = new DataInputStream(Files.newInputStream(file));
+            try {
+                input.readUTF();
+                input.readUTF();
+                return input;
+            } catch (IOException e) {
+                input.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the body of a response to a temporary file while it is read, and replaces the cached
+     * copy with it when the body has been read completely.
+     */
+    private static final class CachingInputStream extends FilterInputStream {
+        private final Path cacheFile;
+        private final Path tempFile;
+        private final OutputStream copy;
+        private boolean completed;
+
+        CachingInputStream(InputStream body, Path cacheFile, String etag, String lastModified) throws IOException {
+            super(body);
+            this.cacheFile = cacheFile;
+            Path tempFile = null;
+            DataOutputStream copy = null;
+            try {
+                Files.createDirectories(cacheFile.getParent());
+                tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+                copy = new DataOutputStream(Files.newOutputStream(tempFile));
+                copy.writeUTF(etag);
+                copy.writeUTF(lastModified);
+            } catch (IOException | RuntimeException e) {
+                try (InputStream unreadBody = body; OutputStream unfinishedCopy = copy) {
+                    if (tempFile != null) {
+                        Files.deleteIfExists(tempFile);
+                    }
+                } catch (IOException | RuntimeException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                throw e;
+            }
+            this.tempFile = tempFile;
+            this.copy = copy;
+        }
+
+        /**
+         * Marking is not supported, as reading the same bytes again after a reset would write
+         * them to the cached copy again.
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                copy.write(read);
+            } else {
+                completed = true;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                copy.write(b, off, read);
+            } else if (read < 0) {
+                completed = true;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] skipped = new byte[(int) Math.min(n, 8192)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                try (OutputStream writtenCopy = copy) {
+                    super.close();
+                }
+                if (completed) {
+                    Files.move(tempFile, cacheFile, ATOMIC_MOVE, REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard.configuration;
+
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Like {@link ConfigurationSourceProviderWithFallback}, this tries to resolve a configuration source first
+ * from a main provider, and then from a fallback provider, but it also remembers the outcome for each path:
+ * <ul>
+ *   <li>If the fallback provider resolved a path, the main provider is not tried again for the same path,
+ *       as long as the fallback provider is able to resolve it.</li>
+ *   <li>If neither provider resolved a path, the failure is remembered for a short time, given as the
+ *       {@code notFoundTimeToLive}, and opening the same path again within that time fails immediately
+ *       with an equivalent {@link ConfigurationSourceNotFoundException}, without a stack trace.</li>
+ * </ul>
+ * This avoids repeating failing lookups when the same configuration is built many times in one JVM,
+ * e.g. in tests and tooling. The remembered outcomes are forgotten with {@link #invalidate()}, which
+ * {@link no.digipost.dropwizard.ReloadingConfiguration} does before every check for changes, so that
+ * a source added to the main provider is found when reloading.
+ */
+public class MemoizingConfigurationSourceProviderWithFallback implements ConfigurationSourceProvider {
+
+    public static final Duration DEFAULT_NOT_FOUND_TIME_TO_LIVE = Duration.ofSeconds(2);
+
+    private static final Resolution RESOLVED_BY_FALLBACK = new Resolution(null, 0);
+
+    private final ConfigurationSourceProvider main;
+    private final ConfigurationSourceProvider fallback;
+    private final long notFoundTimeToLiveNanos;
+    private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    public MemoizingConfigurationSourceProviderWithFallback(ConfigurationSourceProvider main, ConfigurationSourceProvider fallback) {
+        this(main, fallback, DEFAULT_NOT_FOUND_TIME_TO_LIVE);
+    }
+
+    public MemoizingConfigurationSourceProviderWithFallback(ConfigurationSourceProvider main, ConfigurationSourceProvider fallback, Duration notFoundTimeToLive) {
+        this.main = main;
+        this.fallback = fallback;
+        this.notFoundTimeToLiveNanos = notFoundTimeToLive.toNanos();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ConfigurationSourceNotFoundException if both providers fails with {@link IOException} trying to resolve
+     *                                              a configuration source from the given {@code path}, or did so within
+     *                                              the time to live of remembered failures. The thrown exception
+     *                                              will contain the exception from the main provider as cause, and the exception
+     *                                              from the second provider as suppressed.
+     */
+    @Override
+    public final InputStream open(String path) throws IOException {
+        Resolution resolution = resolutions.get(path);
+        if (resolution == RESOLVED_BY_FALLBACK) {
+            try {
+                return fallback.open(path);
+            } catch (IOException e) {
+                resolutions.remove(path, resolution);
+            }
+        } else if (resolution != null) {
+            if (System.nanoTime() - resolution.notFoundAtNanos < notFoundTimeToLiveNanos) {
+                throw new RememberedNotFound(resolution.notFound);
+            }
+            resolutions.remove(path, resolution);
+        }
+
+        IOException exceptionOnMainProvider;
+        try {
+            return main.open(path);
+        } catch (IOException e) {
+            exceptionOnMainProvider = e;
+        }
+        try {
+            InputStream source = fallback.open(path);
+            resolutions.put(path, RESOLVED_BY_FALLBACK);
+            return source;
+        } catch (IOException exceptionOnFallbackProvider) {
+            ConfigurationSourceNotFoundException notFound = ConfigurationSourceProviderWithFallback.notFound(path, exceptionOnMainProvider, exceptionOnFallbackProvider);
+            resolutions.put(path, new Resolution(notFound, System.nanoTime()));
+            throw notFound;
+        } catch (RuntimeException e) {
+            e.addSuppressed(exceptionOnMainProvider);
+            throw e;
+        }
+    }
+
+    /**
+     * Forget the outcome of every path, so that the main provider is tried again for every path.
+     */
+    public void invalidate() {
+        resolutions.clear();
+    }
+
+    private static final class Resolution {
+        final ConfigurationSourceNotFoundException notFound;
+        final long notFoundAtNanos;
+
+        Resolution(ConfigurationSourceNotFoundException notFound, long notFoundAtNanos) {
+            this.notFound = notFound;
+            this.notFoundAtNanos = notFoundAtNanos;
+        }
+    }
+
+    /**
+     * A remembered failure, with the same message, cause and suppressed exceptions as the
+     * original failure, but without a stack trace, as it is expected and already reported.
+     */
+    private static final class RememberedNotFound extends ConfigurationSourceNotFoundException {
+
+        private static final long serialVersionUID = 1L;
+
+        RememberedNotFound(ConfigurationSourceNotFoundException original) {
+            super(original.getMessage(), original.getCause());
+            for (Throwable suppressed : original.getSuppressed()) {
+                addSuppressed(suppressed);
+            }
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -26,6 +26,8 @@ import java.time.temporal.TemporalAmount;
 import java.time.temporal.TemporalUnit;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
 
 import static java.time.temporal.ChronoUnit.DAYS;
@@ -44,11 +46,36 @@ public final class JsonDuration implements TemporalAmount, Serializable {
     private static final long serialVersionUID = 7565437081331942214L;
 
     public static final List<ChronoUnit> supportedUnits = unmodifiableList(Stream.of(ChronoUnit.values()).filter(u -> !u.isDurationEstimated() || u == DAYS).collect(toList()));
+    private static final ChronoUnit[] SUPPORTED_UNITS = supportedUnits.toArray(new ChronoUnit[0]);
+    private static final ChronoUnit[] COMPACT_UNITS = {NANOS, MICROS, MILLIS, SECONDS, MINUTES, HOURS, DAYS};
+    private static final String[][] COMPACT_UNIT_NAMES = {
+            {"ns", "nano", "nanosecond", "nanoseconds"},
+            {"us", "micro", "microsecond", "microseconds"},
+            {"ms", "milli", "millisecond", "milliseconds"},
+            {"s", "second"},
+            {"m", "minute"},
+            {"h", "hour"},
+            {"d", "day"}};
+
+    /**
+     * Bounded caches of parsed instances, so that frequently parsed values, e.g. {@code "30 SECONDS"},
+     * resolve to a shared instance. When a cache is full, new values are parsed without being cached,
+     * so the cached values are kept for as long as they are in use, and parsing many distinct values
+     * never costs more than parsing without a cache. Values with compact units are cached separately,
+     * as they are not accepted by {@link #parse(String)}.
+     */
+    private static final int MAX_CANONICAL_INSTANCES = 512;
+    private static final ConcurrentMap<String, JsonDuration> canonicalInstances = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, JsonDuration> canonicalInstancesWithCompactUnits = new ConcurrentHashMap<>();
 
     public final long amount;
     public final TemporalUnit unit;
     public final Duration duration;
-    private final String stringRepresentation;
+    /**
+     * Built on the first call to {@link #toString()}, and before the instance is serialized,
+     * so that the serialized form is the same as when it was built in the constructor.
+     */
+    private String stringRepresentation;
 
     @Deprecated
     public static JsonDuration of(String jsonString) {
@@ -57,15 +84,250 @@ public final class JsonDuration implements TemporalAmount, Serializable {
 
     @JsonCreator
     public static JsonDuration parse(String jsonString) {
+        return parse(jsonString, false);
+    }
+
+    /**
+     * Parse a duration, or get the shared instance of a value parsed before. Only a value
+     * not already cached, and parsed while the cache is not full, allocates a cache entry.
+     *
+     * @param allowCompactUnits also accept the units supported by HOCON durations,
+     *                          as described for {@link #parse(Object, CharSequence, int, int, boolean)}.
+     */
+    static JsonDuration parse(String jsonString, boolean allowCompactUnits) {
+        if (jsonString == null) {
+            throw new CannotConvertToJsonDuration(null, "it is null");
+        }
+        ConcurrentMap<String, JsonDuration> cache = allowCompactUnits ? canonicalInstancesWithCompactUnits : canonicalInstances;
+        JsonDuration canonical = cache.get(jsonString);
+        if (canonical != null) {
+            return canonical;
+        }
+        JsonDuration parsed = parse(jsonString, jsonString, 0, jsonString.length(), allowCompactUnits);
+        if (cache.size() < MAX_CANONICAL_INSTANCES) {
+            JsonDuration raced = cache.putIfAbsent(jsonString, parsed);
+            return raced != null ? raced : parsed;
+        }
+        return parsed;
+    }
+
+    /**
+     * Parse a duration from a region of the given characters, e.g. the text buffer of a JSON parser, or get the
+     * shared instance of a value parsed before, without creating a string, unless the value is not already
+     * cached, and is parsed while the cache is not full.
+     *
+     * @see #parse(String, boolean)
+     */
+    static JsonDuration parse(char[] chars, int offset, int length, boolean allowCompactUnits) {
+        ConcurrentMap<String, JsonDuration> cache = allowCompactUnits ? canonicalInstancesWithCompactUnits : canonicalInstances;
+        CharRegion region = CharRegion.current.get().of(chars, offset, length);
+        try {
+            JsonDuration canonical = cache.get(region);
+            if (canonical != null) {
+                return canonical;
+            }
+            JsonDuration parsed = parse(null, region, 0, length, allowCompactUnits);
+            if (cache.size() < MAX_CANONICAL_INSTANCES) {
+                JsonDuration raced = cache.putIfAbsent(region.toString(), parsed);
+                return raced != null ? raced : parsed;
+            }
+            return parsed;
+        } finally {
+            region.of(null, 0, 0);
+        }
+    }
+
+    static void clearCanonicalInstances() {
+        canonicalInstances.clear();
+        canonicalInstancesWithCompactUnits.clear();
+    }
+
+    /**
+     * Parse a duration on the form {@code "<amount> <unit>"} from a region of the given characters, scanning
+     * them only once, and without any intermediate strings. Only the resulting {@code JsonDuration} and its
+     * {@link Duration} are allocated, unless parsing fails. The result is not cached.
+     *
+     * @param original the original value, used only for the message of the exception thrown if parsing fails.
+     *                 If {@code null}, the region of the given characters is used.
+     * @param allowCompactUnits also accept the units supported by
+     *                          <a href="https://github.com/lightbend/config/blob/main/HOCON.md#duration-format">HOCON durations</a>,
+     *                          e.g. {@code "30s"}, {@code "5 m"} and {@code "250ms"}, with optional whitespace before the unit.
+     * @throws CannotConvertToJsonDuration if the characters are not on the expected form.
+     */
+    static JsonDuration parse(Object original, CharSequence chars, int start, int end, boolean allowCompactUnits) {
+        int position = start;
+        boolean negative = false;
+        if (position < end && (chars.charAt(position) == '-' || chars.charAt(position) == '+')) {
+            negative = chars.charAt(position) == '-';
+            position++;
+        }
+        int amountStart = position;
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long negatedAmount = 0;
+        for (; position < end && isDigit(chars.charAt(position)); position++) {
+            int digit = chars.charAt(position) - '0';
+            if (negatedAmount < limit / 10 || negatedAmount * 10 < limit + digit) {
+                throw new CannotConvertToJsonDuration(describe(original, chars, start, end), "the amount is out of range");
+            }
+            negatedAmount = negatedAmount * 10 - digit;
+        }
+        if (position == amountStart) {
+            throw new CannotConvertToJsonDuration(describe(original, chars, start, end), "it does not start with an amount");
+        }
+        int unitStart = position;
+        while (position < end && isWhitespace(chars.charAt(position))) {
+            position++;
+        }
+        if (position == unitStart && !allowCompactUnits) {
+            throw new CannotConvertToJsonDuration(describe(original, chars, start, end), "the amount is not followed by whitespace and a unit");
+        }
+        unitStart = position;
+        while (position < end && !isWhitespace(chars.charAt(position))) {
+            position++;
+        }
+        int unitEnd = position;
+        while (position < end && isWhitespace(chars.charAt(position))) {
+            position++;
+        }
+        if (position != end) {
+            throw new CannotConvertToJsonDuration(describe(original, chars, start, end), "the unit is followed by more than whitespace");
+        }
+        ChronoUnit unit = unitNamed(chars, unitStart, unitEnd);
+        if (unit == null && allowCompactUnits) {
+            unit = compactUnitNamed(chars, unitStart, unitEnd);
+        }
+        if (unit == null) {
+            throw new CannotConvertToJsonDuration(describe(original, chars, start, end), "the unit is not supported");
+        }
+        long amount = negative ? negatedAmount : -negatedAmount;
         try {
-            String[] amountAndUnit = jsonString.split("\\s+");
-            long amount = Long.parseLong(amountAndUnit[0]);
-            ChronoUnit unit = ChronoUnit.valueOf(amountAndUnit[1].toUpperCase());
             return new JsonDuration(amount, unit, null);
-        } catch (Exception e) {
-            throw new CannotConvertToJsonDuration(jsonString, e);
+        } catch (ArithmeticException e) {
+            throw new CannotConvertToJsonDuration(describe(original, chars, start, end), e);
         }
+    }
 
+    /**
+     * @return the supported unit with the given name, ignoring case, or {@code null} if no supported unit has the name.
+     */
+    static ChronoUnit unitNamed(CharSequence chars, int start, int end) {
+        for (ChronoUnit unit : SUPPORTED_UNITS) {
+            if (equalsIgnoreCase(unit.name(), chars, start, end)) {
+                return unit;
+            }
+        }
+        return null;
+    }
+
+    private static ChronoUnit compactUnitNamed(CharSequence chars, int start, int end) {
+        for (int i = 0; i < COMPACT_UNIT_NAMES.length; i++) {
+            for (String name : COMPACT_UNIT_NAMES[i]) {
+                if (matches(name, chars, start, end)) {
+                    return COMPACT_UNITS[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String name, CharSequence chars, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (chars.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(String upperCase, CharSequence chars, int start, int end) {
+        if (upperCase.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < upperCase.length(); i++) {
+            char c = chars.charAt(start + i);
+            if (c != upperCase.charAt(i) && Character.toUpperCase(c) != upperCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    private static String describe(Object original, CharSequence chars, int start, int end) {
+        return original != null ? original.toString() : chars.subSequence(start, end).toString();
+    }
+
+    /**
+     * A region of a char array, reused by each thread to look up cached instances by the characters
+     * of a value without creating a string. It has the same hash code as a string with the same characters,
+     * and is equal to such a string, but only as the argument of {@link ConcurrentMap#get(Object)}.
+     */
+    private static final class CharRegion implements CharSequence {
+        static final ThreadLocal<CharRegion> current = ThreadLocal.withInitial(CharRegion::new);
+
+        private char[] chars;
+        private int offset;
+        private int length;
+
+        CharRegion of(char[] chars, int offset, int length) {
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, offset + start, end - start);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof String) || ((String) obj).length() != length) {
+                return false;
+            }
+            String string = (String) obj;
+            for (int i = 0; i < length; i++) {
+                if (string.charAt(i) != chars[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[offset + i];
+            }
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, offset, length);
+        }
     }
 
     public static JsonDuration from(Duration duration) {
@@ -93,7 +355,6 @@ public final class JsonDuration implements TemporalAmount, Serializable {
     private JsonDuration(long amount, ChronoUnit unit, Duration duration) {
         this.amount = amount;
         this.unit = unit;
-        this.stringRepresentation = amount + " " + unit.name();
         this.duration = duration != null ? duration : Duration.of(amount, unit);
     }
 
@@ -101,15 +362,32 @@ public final class JsonDuration implements TemporalAmount, Serializable {
     @Override
     @JsonValue
     public String toString() {
-        return stringRepresentation;
+        String representation = stringRepresentation;
+        if (representation == null) {
+            representation = amount + " " + ((ChronoUnit) unit).name();
+            stringRepresentation = representation;
+        }
+        return representation;
+    }
+
+    private Object writeReplace() {
+        toString();
+        return this;
     }
 
     public static class CannotConvertToJsonDuration extends RuntimeException {
         public CannotConvertToJsonDuration(String jsonString, Throwable cause) {
-            super("Unable to convert \"" + jsonString + "\" to " + JsonDuration.class.getSimpleName() + " because " +
-                  cause.getClass().getSimpleName() + ": '" + cause.getMessage() + "'. " +
-                  "String must be on the form \"<amount> <unit>\", where the unit is one of " +
-                  supportedUnits.stream().map(Enum::name).collect(joining(", ")) + " (case-insensitive)");
+            super(message(jsonString, cause.getClass().getSimpleName() + ": '" + cause.getMessage() + "'"), cause);
+        }
+
+        CannotConvertToJsonDuration(String jsonString, String reason) {
+            super(message(jsonString, reason));
+        }
+
+        private static String message(String jsonString, String reason) {
+            return "Unable to convert \"" + jsonString + "\" to " + JsonDuration.class.getSimpleName() + " because " + reason + ". " +
+                   "String must be on the form \"<amount> <unit>\", where the unit is one of " +
+                   supportedUnits.stream().map(Enum::name).collect(joining(", ")) + " (case-insensitive)";
         }
     }
 
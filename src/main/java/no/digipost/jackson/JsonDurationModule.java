@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Jackson module for {@link JsonDuration}, which in addition to the {@code "<amount> <unit>"} form
+ * accepted by {@link JsonDuration#parse(String)}, also accepts
+ * <ul>
+ *   <li>the compact units of <a href="https://github.com/lightbend/config/blob/main/HOCON.md#duration-format">HOCON durations</a>,
+ *       e.g. {@code "30s"}, {@code "5m"} and {@code "250ms"}, and</li>
+ *   <li>integer numbers, which are milliseconds.</li>
+ * </ul>
+ * Strings are parsed directly from the character buffer of the parser, and resolve to the same shared
+ * instances of frequently parsed values as {@link JsonDuration#parse(String)}, without creating a string
+ * for values already parsed before.
+ */
+public class JsonDurationModule extends SimpleModule {
+
+    private static final long serialVersionUID = 1L;
+
+    public JsonDurationModule() {
+        super(JsonDurationModule.class.getSimpleName());
+        addDeserializer(JsonDuration.class, new JsonDurationDeserializer());
+        addSerializer(JsonDuration.class, new JsonDurationSerializer());
+    }
+
+    static final class JsonDurationDeserializer extends StdScalarDeserializer<JsonDuration> {
+
+        private static final long serialVersionUID = 1L;
+
+        JsonDurationDeserializer() {
+            super(JsonDuration.class);
+        }
+
+        @Override
+        public JsonDuration deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            switch (parser.currentToken()) {
+                case VALUE_STRING:
+                    char[] chars = parser.getTextCharacters();
+                    int offset = parser.getTextOffset();
+                    int length = parser.getTextLength();
+                    try {
+                        return JsonDuration.parse(chars, offset, length, true);
+                    } catch (JsonDuration.CannotConvertToJsonDuration e) {
+                        throw context.weirdStringException(new String(chars, offset, length), JsonDuration.class, e.getMessage());
+                    }
+                case VALUE_NUMBER_INT:
+                    return JsonDuration.from(Duration.ofMillis(parser.getLongValue()));
+                default:
+                    return (JsonDuration) context.handleUnexpectedToken(JsonDuration.class, parser);
+            }
+        }
+    }
+
+    static final class JsonDurationSerializer extends StdScalarSerializer<JsonDuration> {
+
+        private static final long serialVersionUID = 1L;
+
+        JsonDurationSerializer() {
+            super(JsonDuration.class);
+        }
+
+        @Override
+        public void serialize(JsonDuration value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeString(value.toString());
+        }
+    }
+}
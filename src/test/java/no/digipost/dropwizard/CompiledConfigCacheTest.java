@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.ConfigFactory;
+import io.dropwizard.configuration.ConfigurationException;
+import io.dropwizard.configuration.ConfigurationFactory;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.CONFIG_CACHE_KEY;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.ENV_KEY;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.SECRET_KEY;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+class CompiledConfigCacheTest {
+
+    private static final Validator validator = Validation.byProvider(HibernateValidator.class).configure()
+                                                  .buildValidatorFactory().getValidator();
+    private static final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+    private final ConfigurationFactory<TestConfig> configFactory =
+        new TypeSafeConfigurationFactory<>(TestConfig.class, validator, objectMapper, "dw");
+    private final ConfigurationSourceProvider configSourceProvider = new ResourceConfigurationSourceProvider();
+
+    @TempDir
+    Path cacheDirectory;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty(CONFIG_CACHE_KEY, cacheDirectory.toString());
+        System.setProperty(SECRET_KEY, "test-secret.yml");
+        System.setProperty("driverClassSystemProperty", "driverClassFromSystemProperty");
+        ConfigFactory.invalidateCaches();
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(CONFIG_CACHE_KEY);
+        System.clearProperty(ENV_KEY);
+        System.clearProperty(SECRET_KEY);
+        System.clearProperty("driverClassSystemProperty");
+        ConfigFactory.invalidateCaches();
+    }
+
+    @Test
+    void repeatedBuildUsesCompiledConfig() throws IOException, ConfigurationException {
+        System.setProperty(ENV_KEY, "test");
+        TestConfig built = configFactory.build(configSourceProvider, "test-config.yml");
+        List<Path> compiled = cachedFiles();
+        assertThat(compiled, hasSize(1));
+
+        TestConfig fromCache = configFactory.build(configSourceProvider, "test-config.yml");
+        assertThat(cachedFiles(), is(compiled));
+        assertThat(fromCache.database.getUrl(), is(built.database.getUrl()));
+        assertThat(fromCache.database.getPassword(), is("secret_password"));
+        assertThat(fromCache.secrets.verySecret, is("keep this to yourself!"));
+    }
+
+    @Test
+    void cacheKeyIncludesEnvironmentsAndReferencedSystemProperties() throws IOException, ConfigurationException {
+        System.setProperty(ENV_KEY, "test2");
+        configFactory.build(configSourceProvider, "test-config.yml");
+        System.setProperty("driverClassSystemProperty", "anotherDriverClass");
+        ConfigFactory.invalidateCaches();
+        TestConfig changedSystemProperty = configFactory.build(configSourceProvider, "test-config.yml");
+        System.setProperty(ENV_KEY, "local");
+        configFactory.build(configSourceProvider, "test-config.yml");
+
+        assertThat(changedSystemProperty.database.getDriverClass(), is("anotherDriverClass"));
+        assertThat(cachedFiles(), hasSize(3));
+    }
+
+    @Test
+    void compiledConfigContainsNoPlaintextValues() throws IOException, ConfigurationException {
+        System.setProperty(ENV_KEY, "test");
+        configFactory.build(configSourceProvider, "test-config.yml");
+
+        for (Path compiled : cachedFiles()) {
+            String content = new String(Files.readAllBytes(compiled), ISO_8859_1);
+            assertThat(content, not(containsString("secret_password")));
+            assertThat(content, not(containsString("keep this to yourself!")));
+        }
+    }
+
+    @Test
+    void findsSubstitutionsInSource() {
+        assertThat(CompiledConfigCache.substitutionsIn("a: ${x.y}\nb: \"${? OPTIONAL}/path\"\nc: ${unterminated"),
+                containsInAnyOrder("x.y", "OPTIONAL"));
+    }
+
+    private List<Path> cachedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.sorted().collect(toList());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.co.probablyfine.matchers.Java8Matchers.where;
+
+class ConcurrentSourceLoadingTest {
+
+    @Test
+    void loadsSourcesConcurrentlyInOrder() {
+        CountDownLatch allStarted = new CountDownLatch(3);
+        List<String> loaded = ConcurrentSourceLoading.loadAll(List.of("a", "b", "c"), path -> {
+            allStarted.countDown();
+            try {
+                if (!allStarted.await(10, SECONDS)) {
+                    throw new IllegalStateException("sources were not loaded concurrently");
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return path.toUpperCase();
+        });
+        assertThat(loaded, contains("A", "B", "C"));
+    }
+
+    @Test
+    void throwsExceptionFromFirstFailingSource() {
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> ConcurrentSourceLoading.loadAll(List.of("a", "b", "c"), path -> {
+            if (!path.equals("a")) {
+                throw new IllegalStateException(path + " failed");
+            }
+            return path;
+        }));
+        assertThat(failure, where(Throwable::getMessage, is("b failed")));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigParseOptions;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.AbstractLogger;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.not;
+
+class ConfigDumpTest {
+
+    private final TypeSafeConfigurationFactory<TestConfig> configFactory = new TypeSafeConfigurationFactory<>(
+            TestConfig.class, Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(),
+            Jackson.newObjectMapper(), "dw");
+
+    @Test
+    void redactsSecretConfigAndSensitivePaths() throws Exception {
+        ResolvedConfiguration<TestConfig> configuration = configFactory.buildResolved(new ResourceConfigurationSourceProvider(), "test-config.yml",
+                ConfigurationBuildContext.forEnvironments("test").withSecret("test-secret.yml"));
+
+        StringBuilder dump = new StringBuilder();
+        ConfigDump.of(configuration).withSensitivePaths("database.url").writeTo(dump);
+        List<String> lines = List.of(dump.toString().split("\n"));
+        assertThat(lines, hasItems(
+                "database.driverClass = \"overridden\"",
+                "database.url = " + ConfigDump.REDACTED,
+                "database.password = " + ConfigDump.REDACTED,
+                "secrets.verySecret = " + ConfigDump.REDACTED,
+                "database.user = \"test\""));
+        assertThat(dump.toString(), not(containsString("secret_password")));
+        assertThat(dump.toString(), not(containsString("keep this to yourself!")));
+    }
+
+    @Test
+    void redactsSecretConfigOfConfigurationFromCompiledConfigCache(@TempDir Path cacheDirectory) throws Exception {
+        ConfigurationBuildContext context = ConfigurationBuildContext.forEnvironments("test").withSecret("test-secret.yml").withCompiledConfigCache(cacheDirectory);
+        configFactory.buildResolved(new ResourceConfigurationSourceProvider(), "test-config.yml", context);
+        ResolvedConfiguration<TestConfig> cached = configFactory.buildResolved(new ResourceConfigurationSourceProvider(), "test-config.yml", context);
+        assertThat(cached.getConfigObject().origin().description(), containsString("compiled configuration"));
+
+        StringBuilder dump = new StringBuilder();
+        ConfigDump.of(cached).writeTo(dump);
+        assertThat(List.of(dump.toString().split("\n")), hasItems(
+                "database.driverClass = \"overridden\"",
+                "secrets.verySecret = " + ConfigDump.REDACTED,
+                "database.user = \"test\""));
+        assertThat(dump.toString(), not(containsString("keep this to yourself!")));
+    }
+
+    @Test
+    void redactsSecretValueDefinedWithSubstitution() throws Exception {
+        ConfigurationSourceProvider sourceProvider = path -> path.equals("substituting-secret.conf")
+                ? new ByteArrayInputStream("database.password = ${variables.testvar1}".getBytes(UTF_8))
+                : new ResourceConfigurationSourceProvider().open(path);
+        ResolvedConfiguration<TestConfig> configuration = configFactory.buildResolved(sourceProvider, "test-config.yml",
+                ConfigurationBuildContext.forEnvironments("test").withSecret("substituting-secret.conf"));
+
+        StringBuilder dump = new StringBuilder();
+        ConfigDump.of(configuration).writeTo(dump);
+        assertThat(List.of(dump.toString().split("\n")), hasItems("database.password = " + ConfigDump.REDACTED, "database.user = \"test\""));
+        assertThat(dump.toString(), not(containsString("default variable value")));
+    }
+
+    @Test
+    void redactsEveryValueSetBySecretConfigRegardlessOfOrigin() {
+        ConfigObject secretConfig = ConfigFactory.parseString("a = 1, nested { b = 2 }, list = [x]", ConfigParseOptions.defaults().setOriginDescription("secret.yml")).root();
+        ConfigDump dump = ConfigDump.of(
+                secretConfig.withFallback(ConfigFactory.parseString("c = 3, nested { d = 4 }", ConfigParseOptions.defaults().setOriginDescription("not-secret.yml"))).toConfig()
+                        .withFallback(ConfigFactory.parseMap(Map.of("e", List.of("y")), "config.yml")).root(),
+                secretConfig);
+
+        assertThat(logged(dump, Level.DEBUG), contains(
+                "a = " + ConfigDump.REDACTED, "c = 3", "e[0] = \"y\"", "list[0] = " + ConfigDump.REDACTED, "nested.b = " + ConfigDump.REDACTED, "nested.d = 4"));
+    }
+
+    @Test
+    void logsNothingUnlessDebugIsEnabled() {
+        ConfigDump dump = ConfigDump.of(ConfigFactory.parseMap(Map.of("a", 1)).root(), ConfigFactory.empty().root());
+
+        assertThat(logged(dump, Level.INFO), empty());
+    }
+
+    @Test
+    void taskWritesDumpOfCurrentConfiguration() throws Exception {
+        ResolvedConfiguration<TestConfig> configuration = configFactory.buildResolved(new ResourceConfigurationSourceProvider(), "test-config.yml",
+                ConfigurationBuildContext.forEnvironments("test").withSecret("test-secret.yml"));
+
+        StringWriter output = new StringWriter();
+        new ConfigDumpTask(() -> configuration).execute(Map.of("redact", List.of("database.user")), new PrintWriter(output));
+        assertThat(output.toString(), containsString("database.user = " + ConfigDump.REDACTED));
+        assertThat(output.toString(), containsString("database.url = \"test_url\""));
+    }
+
+    private static List<String> logged(ConfigDump dump, Level level) {
+        RecordingLogger logger = new RecordingLogger(level);
+        dump.logTo(logger);
+        return logger.messages;
+    }
+
+    private static final class RecordingLogger extends AbstractLogger {
+        final List<String> messages = new ArrayList<>();
+        final Level level;
+
+        RecordingLogger(Level level) {
+            this.name = "config-dump";
+            this.level = level;
+        }
+
+        @Override
+        protected String getFullyQualifiedCallerName() {
+            return null;
+        }
+
+        @Override
+        protected void handleNormalizedLoggingCall(Level level, Marker marker, String messagePattern, Object[] arguments, Throwable throwable) {
+            messages.add(MessageFormatter.basicArrayFormat(messagePattern, arguments));
+        }
+
+        @Override
+        public boolean isTraceEnabled() {
+            return level.compareTo(Level.TRACE) >= 0;
+        }
+
+        @Override
+        public boolean isTraceEnabled(Marker marker) {
+            return isTraceEnabled();
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return level.compareTo(Level.DEBUG) >= 0;
+        }
+
+        @Override
+        public boolean isDebugEnabled(Marker marker) {
+            return isDebugEnabled();
+        }
+
+        @Override
+        public boolean isInfoEnabled() {
+            return level.compareTo(Level.INFO) >= 0;
+        }
+
+        @Override
+        public boolean isInfoEnabled(Marker marker) {
+            return isInfoEnabled();
+        }
+
+        @Override
+        public boolean isWarnEnabled() {
+            return level.compareTo(Level.WARN) >= 0;
+        }
+
+        @Override
+        public boolean isWarnEnabled(Marker marker) {
+            return isWarnEnabled();
+        }
+
+        @Override
+        public boolean isErrorEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isErrorEnabled(Marker marker) {
+            return true;
+        }
+    }
+}
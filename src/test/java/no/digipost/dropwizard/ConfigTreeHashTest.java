@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+
+class ConfigTreeHashTest {
+
+    @Test
+    void noChangesInEqualTrees() {
+        assertThat(changedPaths("a { b = 1, c = [1, 2] }, d = x", "d = x, a { c = [1, 2], b = 1 }"), empty());
+    }
+
+    @Test
+    void findsChangedAddedAndRemovedLeaves() {
+        assertThat(changedPaths("a { b = 1, c = 2 }, d = x, e = 1", "a { b = 1, c = 3 }, d = y, f = 1"),
+                containsInAnyOrder(List.of("a", "c"), List.of("d"), List.of("e"), List.of("f")));
+    }
+
+    @Test
+    void changedTypeOrListIsReportedOnlyAtTheChangedPath() {
+        assertThat(changedPaths("a { b { c = 1 } }, l = [1, 2], t = 1", "a { b = 1 }, l = [2, 1], t = \"1\""),
+                containsInAnyOrder(List.of("a", "b"), List.of("l"), List.of("t")));
+    }
+
+    private static Set<List<String>> changedPaths(String from, String to) {
+        return ConfigTreeHash.of(ConfigFactory.parseString(from).root())
+                .changedPathsTo(ConfigTreeHash.of(ConfigFactory.parseString(to).root()));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConfigTreeReaderTest {
+
+    private final YAMLFactory yamlFactory = new YAMLFactory();
+
+    @Test
+    void readsScalarsListsAndNestedObjects() throws IOException {
+        Config config = read(
+                "a:\n" +
+                "  string: text\n" +
+                "  int: 42\n" +
+                "  long: 12345678901\n" +
+                "  double: 1.5\n" +
+                "  bool: true\n" +
+                "  empty:\n" +
+                "  list: [x, y]\n");
+
+        assertAll(
+                () -> assertThat(config.getString("a.string"), is("text")),
+                () -> assertThat(config.getInt("a.int"), is(42)),
+                () -> assertThat(config.getLong("a.long"), is(12345678901L)),
+                () -> assertThat(config.getDouble("a.double"), is(1.5)),
+                () -> assertThat(config.getBoolean("a.bool"), is(true)),
+                () -> assertThat(config.getIsNull("a.empty"), is(true)),
+                () -> assertThat(config.getStringList("a.list"), contains("x", "y")));
+    }
+
+    @Test
+    void keysContainingDotsAreNotTreatedAsPaths() throws IOException {
+        Config config = read("loggers:\n  \"no.digipost.SomeClass\": debug\n");
+        assertThat(config.getString("loggers.\"no.digipost.SomeClass\""), is("debug"));
+    }
+
+    @Test
+    void substitutionsAreResolvedWithSurroundingTextKeptVerbatim() throws IOException {
+        Config config = read(
+                "host: example.com\n" +
+                "port: 5432\n" +
+                "plain: ${host}\n" +
+                "url: \"jdbc:postgresql://${host}:${port}/db, // not a comment\"\n" +
+                "list: [\"${host}\"]\n" +
+                "optional: ${?not.there}\n").resolve();
+
+        assertAll(
+                () -> assertThat(config.getString("plain"), is("example.com")),
+                () -> assertThat(config.getString("url"), is("jdbc:postgresql://example.com:5432/db, // not a comment")),
+                () -> assertThat(config.getStringList("list"), is(List.of("example.com"))),
+                () -> assertThat(config.hasPath("optional"), is(false)));
+    }
+
+    @Test
+    void valuesHaveOriginWithSourceAndLineNumber() throws IOException {
+        Config config = read("a:\n  b: 1\n  c: ${a.b}\n");
+
+        assertAll(
+                () -> assertThat(config.getValue("a.b").origin().description(), is("test.yml: 2")),
+                () -> assertThat(config.getValue("a.b").origin().lineNumber(), is(2)),
+                () -> assertThat(config.resolve().getValue("a.c").origin().lineNumber(), is(2)));
+    }
+
+    @Test
+    void skipsEnvironmentsNotKept() throws IOException {
+        Config config = ConfigTreeReader.read(yamlFactory.createParser(
+                "a: 1\n" +
+                "environments:\n" +
+                "  local:\n" +
+                "    a: 2\n" +
+                "  test:\n" +
+                "    a: 3\n" +
+                "    list: [1, {b: 2}]\n" +
+                "  prod: ~\n" +
+                "nested:\n" +
+                "  environments:\n" +
+                "    test: {a: 4}\n"), "test.yml", Set.of("local")).toConfig();
+
+        assertAll(
+                () -> assertThat(config.getObject("environments").keySet(), contains("local")),
+                () -> assertThat(config.getInt("environments.local.a"), is(2)),
+                () -> assertThat(config.getInt("nested.environments.test.a"), is(4)),
+                () -> assertThat(config.getInt("a"), is(1)));
+    }
+
+    @Test
+    void emptyDocumentIsEmptyConfig() throws IOException {
+        assertThat(read("").isEmpty(), is(true));
+    }
+
+    @Test
+    void documentMustHaveObjectAtRoot() {
+        assertThrows(ConfigException.Parse.class, () -> read("- a\n- b\n"));
+    }
+
+    private Config read(String yaml) throws IOException {
+        return ConfigTreeReader.read(yamlFactory.createParser(yaml), "test.yml").toConfig();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigFactory;
+import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toSet;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.BIND;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.OPEN;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.PARSE;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.REDUCE;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.RESOLVE;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.VALIDATE;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.ENV_KEY;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+
+class ConfigurationBuildTimingsTest {
+
+    private final TypeSafeConfigurationFactory<TestConfig> configFactory = new TypeSafeConfigurationFactory<>(
+            TestConfig.class, Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(),
+            Jackson.newObjectMapper(), "dw");
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty(ENV_KEY, "local");
+        System.setProperty("driverClassSystemProperty", "driverClassFromSystemProperty");
+        ConfigFactory.invalidateCaches();
+        ParsedSourceCache.shared.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(ENV_KEY);
+        System.clearProperty("driverClassSystemProperty");
+    }
+
+    @Test
+    void recordsEveryPhaseWithSizes() throws Exception {
+        ConfigurationBuildTimings timings = configFactory.buildResolved(new ResourceConfigurationSourceProvider(), "test-config.yml").getBuildTimings();
+
+        List<ConfigurationBuildTimings.PhaseTiming> phaseTimings = timings.getPhaseTimings();
+        assertThat(phaseTimings.stream().map(timing -> timing.phase).collect(toSet()), containsInAnyOrder(OPEN, PARSE, RESOLVE, REDUCE, BIND, VALIDATE));
+        ConfigurationBuildTimings.PhaseTiming parse = phaseTimings.stream().filter(timing -> timing.phase == PARSE).findFirst().get();
+        assertThat(parse.source, is("test-config.yml"));
+        assertThat(parse.size, greaterThan(0L));
+        assertThat(phaseTimings.stream().filter(timing -> timing.phase == BIND).findFirst().get().size, greaterThan(1L));
+        assertThat(timings.getTotal(BIND).compareTo(timings.getTotal(VALIDATE)), greaterThan(0));
+    }
+
+    @Test
+    void phasesAreRecordedAsFlightRecorderEvents(@TempDir Path recordingDirectory) throws Exception {
+        Path recordingFile = recordingDirectory.resolve("build.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("no.digipost.dropwizard.ConfigurationBuildPhase");
+            recording.start();
+            configFactory.build(new ResourceConfigurationSourceProvider(), "test-config.yml");
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        Set<String> recordedPhases = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals("no.digipost.dropwizard.ConfigurationBuildPhase"))
+                .map(event -> event.getString("phase"))
+                .collect(toSet());
+        assertThat(recordedPhases, hasItems("OPEN", "PARSE", "RESOLVE", "REDUCE", "BIND", "VALIDATE"));
+    }
+}
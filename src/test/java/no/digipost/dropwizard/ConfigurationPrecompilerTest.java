@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigFactory;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.PARSE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConfigurationPrecompilerTest {
+
+    private final TypeSafeConfigurationFactory<TestConfig> configFactory = new TypeSafeConfigurationFactory<>(
+            TestConfig.class, Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(),
+            Jackson.newObjectMapper(), "dw");
+
+    @TempDir
+    Path directory;
+    private String configPath;
+
+    @BeforeEach
+    void copyConfigToDirectory() throws Exception {
+        Path config = Files.copy(Paths.get(getClass().getResource("/test-config.yml").toURI()), directory.resolve("test-config.yml"));
+        Files.copy(Paths.get(getClass().getResource("/test-secret.yml").toURI()), directory.resolve("test-secret.yml"));
+        configPath = config.toString();
+        System.setProperty("driverClassSystemProperty", "driverClassFromSystemProperty");
+        ConfigFactory.invalidateCaches();
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("driverClassSystemProperty");
+    }
+
+    @Test
+    void buildsSameConfigurationFromPrecompiledArtifact() throws Exception {
+        ConfigurationPrecompiler.main(configPath, directory.toString(), "local", "test", "test2", "test,test2");
+
+        for (List<String> environments : List.of(List.of("local"), List.of("test"), List.of("test2"), List.of("test", "test2"))) {
+            ConfigurationBuildContext context = ConfigurationBuildContext.forEnvironments(environments)
+                    .withSecret(directory.resolve("test-secret.yml").toString())
+                    .withOverrideResolver(LazyOverridesResolver.SYSTEM_PROPERTIES_AND_ENVIRONMENT);
+            ResolvedConfiguration<TestConfig> built = configFactory.buildResolved(new FileConfigurationSourceProvider(), configPath, context);
+            ParsedSourceCache.shared.clear();
+            ResolvedConfiguration<TestConfig> precompiled = configFactory.buildResolved(
+                    new FileConfigurationSourceProvider(), configPath, context.withPrecompiledConfig(true));
+
+            assertThat(parsedSources(precompiled), contains(PrecompiledConfig.artifactPath(configPath, environments), directory.resolve("test-secret.yml").toString()));
+            assertThat(environments.toString(), precompiled.getConfigObject(), is(built.getConfigObject()));
+        }
+    }
+
+    @Test
+    void buildsAsUsualIfConfigurationIsChangedOrNotPrecompiled() throws Exception {
+        ConfigurationPrecompiler.precompile(Paths.get(configPath), directory, List.of("test"));
+        Files.writeString(Paths.get(configPath), "\nchanged: true\n", UTF_8, APPEND);
+
+        ResolvedConfiguration<TestConfig> changed = configFactory.buildResolved(
+                new FileConfigurationSourceProvider(), configPath, ConfigurationBuildContext.forEnvironments("test").withPrecompiledConfig(true));
+        assertThat(changed.getConfigObject().toConfig().getBoolean("changed"), is(true));
+        assertThat(parsedSources(changed), hasItem(configPath));
+
+        ParsedSourceCache.shared.clear();
+        ResolvedConfiguration<TestConfig> notPrecompiled = configFactory.buildResolved(
+                new FileConfigurationSourceProvider(), configPath, ConfigurationBuildContext.forEnvironments("local").withPrecompiledConfig(true));
+        assertThat(parsedSources(notPrecompiled), contains(configPath));
+    }
+
+    @Test
+    void refusesToPrecompileConfigurationWhichIncludesOtherSources() throws Exception {
+        Files.writeString(directory.resolve("included.yml"), "included: true\n");
+        Files.writeString(Paths.get(configPath), "\n$include: included.yml\n", UTF_8, APPEND);
+
+        assertThrows(IllegalArgumentException.class, () -> ConfigurationPrecompiler.precompile(Paths.get(configPath), directory, List.of("test")));
+    }
+
+    private static List<String> parsedSources(ResolvedConfiguration<?> configuration) {
+        return configuration.getBuildTimings().getPhaseTimings().stream()
+                .filter(timing -> timing.phase == PARSE)
+                .map(timing -> timing.source)
+                .collect(toList());
+    }
+}
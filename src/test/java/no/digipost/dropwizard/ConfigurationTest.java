@@ -15,27 +15,48 @@
  */
 package no.digipost.dropwizard;
 
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigObject;
 import io.dropwizard.configuration.ConfigurationException;
 import io.dropwizard.configuration.ConfigurationFactory;
 import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.ConfigurationValidationException;
 import io.dropwizard.configuration.FileConfigurationSourceProvider;
 import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
 import io.dropwizard.jackson.Jackson;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 import no.digipost.dropwizard.configuration.ConfigurationSourceProviderWithFallback;
+import no.digipost.dropwizard.configuration.FileChannelConfigurationSourceProvider;
+import no.digipost.jackson.JsonDuration;
 import org.hibernate.validator.HibernateValidator;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static no.digipost.dropwizard.TypeSafeConfigurationFactory.ENV_KEY;
 import static no.digipost.dropwizard.TypeSafeConfigurationFactory.SECRET_KEY;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ConfigurationTest {
 
@@ -51,6 +72,7 @@ class ConfigurationTest {
     @BeforeEach
     void setUp() {
         System.setProperty("driverClassSystemProperty", "driverClassFromSystemProperty");
+        ConfigFactory.invalidateCaches();
     }
 
     @AfterEach
@@ -58,6 +80,9 @@ class ConfigurationTest {
         System.clearProperty(ENV_KEY);
         System.clearProperty(SECRET_KEY);
         System.clearProperty("driverClassSystemProperty");
+        System.clearProperty("dw.database.user");
+        System.clearProperty("dw.database.maxSize");
+        System.clearProperty(TypeSafeConfigurationFactory.PRUNE_ENVIRONMENTS_KEY);
     }
 
     @Test
@@ -96,6 +121,39 @@ class ConfigurationTest {
         assertThat(config.database.getUrl(), is("test_url"));
     }
 
+    @Test
+    void should_load_config_and_secret_read_through_file_channel() throws IOException, ConfigurationException {
+        setEnv("local");
+        System.setProperty(TypeSafeConfigurationFactory.SECRET_KEY, getClass().getResource("/test-secret.yml").getFile());
+
+        TestConfig config = configFactory.build(new FileChannelConfigurationSourceProvider(), getClass().getResource("/test-config.yml").getFile());
+        assertThat(config.database.getDriverClass(), is("org.postgresql.Driver"));
+        assertThat(config.database.getPassword(), is("secret_password"));
+    }
+
+    @Test
+    void should_resolve_same_config_when_pruning_other_environments_while_loading() throws IOException, ConfigurationException {
+        TypeSafeConfigurationFactory<TestConfig> factory = new TypeSafeConfigurationFactory<>(TestConfig.class, validator, objectMapper, "dw");
+        setEnv("test, test2");
+        System.setProperty(TypeSafeConfigurationFactory.SECRET_KEY, getClass().getResource("/test-secret.yml").getFile());
+        ConfigObject reduced = factory.buildResolved(configSourceProvider, "test-config.yml").getConfigObject();
+
+        System.setProperty(TypeSafeConfigurationFactory.PRUNE_ENVIRONMENTS_KEY, "true");
+        ConfigFactory.invalidateCaches();
+        ConfigObject pruned = factory.buildResolved(configSourceProvider, "test-config.yml").getConfigObject();
+
+        assertThat(pruned, is(reduced));
+    }
+
+    @Test
+    void should_prune_other_environments_from_parsed_hocon() {
+        Config parsed = ConfigFactory.parseString("a = 1, environments { local { a = 2 }, test { a = ${a} } }");
+
+        Config pruned = TypeSafeConfigurationFactory.pruneEnvironments(parsed, Set.of("local"));
+        assertThat(pruned.root().toConfig().getObject("environments").keySet(), is(Set.of("local")));
+        assertThat(TypeSafeConfigurationFactory.pruneEnvironments(parsed, null), is(parsed));
+    }
+
     @Test
     void should_load_secret_config_from_file() throws IOException, ConfigurationException {
         setEnv("local");
@@ -142,6 +200,127 @@ class ConfigurationTest {
         assertThat(config.database.getDriverClass(), is("driverClassFromSystemProperty"));
     }
 
+    @Test
+    void should_apply_overrides_with_property_prefix() throws IOException, ConfigurationException {
+        setEnv("test");
+        System.setProperty("dw.database.user", "userFromPrefixedSystemProperty");
+
+        TestConfig config = configFactory.build(configSourceProvider, "test-config.yml");
+        assertThat(config.database.getUser(), is("userFromPrefixedSystemProperty"));
+    }
+
+    @Test
+    void should_build_with_explicit_context_instead_of_system_properties() throws IOException, ConfigurationException {
+        setEnv("test");
+        TypeSafeConfigurationFactory<TestConfig> factory = new TypeSafeConfigurationFactory<>(TestConfig.class, validator, objectMapper, "dw");
+
+        ResolvedConfiguration<TestConfig> resolved = factory.buildResolved(configSourceProvider, "test-config.yml",
+                ConfigurationBuildContext.forEnvironments("local").withSecret("test-secret.yml"));
+        assertThat(resolved.getConfiguration().database.getUrl(), is("local_url"));
+        assertThat(resolved.getConfiguration().database.getPassword(), is("secret_password"));
+        assertThat(resolved.getBuildContext().getEnvironments(), is(List.of("local")));
+    }
+
+    @Test
+    void should_build_with_different_contexts_concurrently() throws Exception {
+        TypeSafeConfigurationFactory<TestConfig> factory = new TypeSafeConfigurationFactory<>(TestConfig.class, validator, objectMapper, "dw");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<TestConfig>> builds = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                ConfigurationBuildContext context = ConfigurationBuildContext.forEnvironments("test2")
+                        .withOverrides(ConfigFactory.parseMap(Map.of("driverClassSystemProperty", "driver" + i)));
+                builds.add(executor.submit(() -> factory.buildResolved(configSourceProvider, "test-config.yml", context).getConfiguration()));
+            }
+            for (int i = 0; i < builds.size(); i++) {
+                assertThat(builds.get(i).get().database.getDriverClass(), is("driver" + i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void should_bind_config_resolved_early_when_built_from_same_sources() throws IOException, ConfigurationException {
+        TypeSafeConfigurationFactory<TestConfig> factory = new TypeSafeConfigurationFactory<>(TestConfig.class, validator, objectMapper, "dw");
+        List<String> opened = new CopyOnWriteArrayList<>();
+        ConfigurationSourceProvider countingProvider = path -> {
+            opened.add(path);
+            return configSourceProvider.open(path);
+        };
+        ConfigurationBuildContext context = ConfigurationBuildContext.forEnvironments("test").withSecret("test-secret.yml");
+
+        factory.useEarlyResolution(TypeSafeConfigurationFactory.resolveEarly(countingProvider, "test-config.yml", context));
+        TestConfig config = factory.buildResolved(countingProvider, "test-config.yml", context).getConfiguration();
+        assertThat(config.database.getUrl(), is("test_url"));
+        assertThat(opened, containsInAnyOrder("test-config.yml", "test-secret.yml"));
+
+        factory.buildResolved(countingProvider, "test-config.yml", context);
+        assertThat(opened, hasSize(4));
+    }
+
+    @Test
+    void should_not_use_config_resolved_early_from_other_sources() throws IOException, ConfigurationException {
+        TypeSafeConfigurationFactory<TestConfig> factory = new TypeSafeConfigurationFactory<>(TestConfig.class, validator, objectMapper, "dw");
+
+        factory.useEarlyResolution(TypeSafeConfigurationFactory.resolveEarly(configSourceProvider, "test-config.yml", ConfigurationBuildContext.forEnvironments("test")));
+        TestConfig config = factory.buildResolved(configSourceProvider, "test-config.yml", ConfigurationBuildContext.forEnvironments("local")).getConfiguration();
+        assertThat(config.database.getUrl(), is("local_url"));
+    }
+
+    @Test
+    void should_fail_the_same_when_resolved_early() {
+        TypeSafeConfigurationFactory<TestConfig> factory = new TypeSafeConfigurationFactory<>(TestConfig.class, validator, objectMapper, "dw");
+        ConfigurationBuildContext context = ConfigurationBuildContext.forEnvironments("test");
+        Exception failure = assertThrows(Exception.class, () -> factory.buildResolved(configSourceProvider, "non-existing.yml", context));
+
+        factory.useEarlyResolution(TypeSafeConfigurationFactory.resolveEarly(configSourceProvider, "non-existing.yml", context));
+        Exception earlyFailure = assertThrows(Exception.class, () -> factory.buildResolved(configSourceProvider, "non-existing.yml", context));
+        assertThat(earlyFailure.getClass(), is(failure.getClass()));
+        assertThat(earlyFailure.getMessage(), is(failure.getMessage()));
+    }
+
+    @Test
+    void should_read_context_from_system_properties_with_and_without_prefix() {
+        System.setProperty("dw." + ENV_KEY, "test, test2");
+        System.setProperty(SECRET_KEY, "test-secret.yml");
+        System.setProperty("dw." + TypeSafeConfigurationFactory.PRUNE_ENVIRONMENTS_KEY, "true");
+        try {
+            ConfigurationBuildContext context = ConfigurationBuildContext.fromSystemProperties("dw");
+            assertThat(context.getEnvironments(), is(List.of("test", "test2")));
+            assertThat(context.getSecretPath(), is(Optional.of("test-secret.yml")));
+            assertThat(context.isPruningEnvironments(), is(true));
+            assertThat(context.getCompiledConfigCache(), is(Optional.empty()));
+            assertThat(context.getOverrideResolver().get().lookup("driverClassSystemProperty").unwrapped(), is("driverClassFromSystemProperty"));
+        } finally {
+            System.clearProperty("dw." + ENV_KEY);
+            System.clearProperty("dw." + TypeSafeConfigurationFactory.PRUNE_ENVIRONMENTS_KEY);
+        }
+    }
+
+    @Test
+    void should_validate_config() {
+        setEnv("test");
+        System.setProperty("dw.database.maxSize", "0");
+
+        assertThrows(ConfigurationValidationException.class, () -> configFactory.build(configSourceProvider, "test-config.yml"));
+    }
+
+    @Test
+    void should_bind_hocon_durations_without_changing_the_given_object_mapper() throws IOException, ConfigurationException {
+        ConfigurationSourceProvider durationConfig = path -> new ByteArrayInputStream(
+                "timeout = 30s\nenvironments { test { timeout = 250ms } }".getBytes(UTF_8));
+        TypeSafeConfigurationFactory<DurationConfig> durationConfigFactory = new TypeSafeConfigurationFactory<>(DurationConfig.class, validator, objectMapper, "dw");
+
+        DurationConfig config = durationConfigFactory.buildResolved(durationConfig, "durations.conf", ConfigurationBuildContext.forEnvironments("test")).getConfiguration();
+        assertThat(config.timeout, is(JsonDuration.parse("250 millis")));
+        assertThrows(JsonMappingException.class, () -> objectMapper.readValue("\"250ms\"", JsonDuration.class));
+    }
+
+    public static class DurationConfig {
+        public JsonDuration timeout;
+    }
+
     private static void setEnv(final String env) {
         System.setProperty(ENV_KEY, env);
     }
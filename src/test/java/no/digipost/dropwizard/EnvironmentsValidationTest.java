@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.ConfigFactory;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class EnvironmentsValidationTest {
+
+    private final TypeSafeConfigurationFactory<TestConfig> configFactory = new TypeSafeConfigurationFactory<>(
+            TestConfig.class, Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(),
+            Jackson.newObjectMapper(), "dw");
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("driverClassSystemProperty", "driverClassFromSystemProperty");
+        ConfigFactory.invalidateCaches();
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("driverClassSystemProperty");
+    }
+
+    @Test
+    void validatesEveryEnvironmentWithoutEnvSystemProperty() {
+        EnvironmentsValidationReport report = configFactory.validateAllEnvironments(new ResourceConfigurationSourceProvider(), "test-config.yml");
+
+        assertAll(
+                () -> assertThat(report.isValid(), is(true)),
+                () -> assertThat(report.getResults().stream().map(EnvironmentsValidationReport.EnvironmentResult::getEnvironment).collect(toList()),
+                        contains("local", "test", "test2")),
+                () -> assertThat(report.getInvalid(), empty()));
+    }
+
+    @Test
+    void reportsErrorsPerEnvironment(@TempDir Path directory) throws IOException {
+        Path configFile = Files.writeString(directory.resolve("config.yml"),
+                "database:\n" +
+                "  driverClass: org.postgresql.Driver\n" +
+                "environments:\n" +
+                "  valid:\n" +
+                "    database:\n" +
+                "      url: valid_url\n" +
+                "  missingUrl:\n" +
+                "    database:\n" +
+                "      maxSize: 5\n" +
+                "  unresolved:\n" +
+                "    database:\n" +
+                "      url: ${not.there}\n");
+
+        EnvironmentsValidationReport report = configFactory.validateAllEnvironments(new FileConfigurationSourceProvider(), configFile.toString());
+
+        assertAll(
+                () -> assertThat(report.isValid(), is(false)),
+                () -> assertThat(report.getInvalid().stream().map(EnvironmentsValidationReport.EnvironmentResult::getEnvironment).collect(toList()),
+                        contains("missingUrl", "unresolved")),
+                () -> assertThat(report.getInvalid().get(0).getErrors(), hasItem(containsString("database.url"))),
+                () -> assertThat(report.getInvalid().get(1).getErrors(), hasItem(containsString("not.there"))),
+                () -> assertThat(report.toString(), containsString("valid: valid")));
+    }
+}
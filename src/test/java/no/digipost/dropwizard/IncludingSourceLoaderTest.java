@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IncludingSourceLoaderTest {
+
+    private final Map<String, String> sources = new HashMap<>();
+    private final Map<String, Integer> opened = new ConcurrentHashMap<>();
+    private final ConfigurationSourceProvider sourceProvider = path -> {
+        opened.merge(path, 1, Integer::sum);
+        if (!sources.containsKey(path)) {
+            throw new FileNotFoundException(path);
+        }
+        return new ByteArrayInputStream(sources.get(path).getBytes(UTF_8));
+    };
+
+    @BeforeEach
+    void setUp() {
+        ParsedSourceCache.shared.clear();
+    }
+
+    @Test
+    void includesYamlSourcesRelativeToIncludingSource() {
+        sources.put("config/main.yml", "$include: [base.yml, shared/more.yml]\na: main\ndatabase:\n  $include: shared/database.yml\n  user: main\n");
+        sources.put("config/base.yml", "a: base\nb: base\nc: base\n");
+        sources.put("config/shared/more.yml", "b: more\n");
+        sources.put("config/shared/database.yml", "user: shared\nurl: shared_url\n");
+
+        Config loaded = load("config/main.yml");
+        assertThat(loaded.getString("a"), is("main"));
+        assertThat(loaded.getString("b"), is("more"));
+        assertThat(loaded.getString("c"), is("base"));
+        assertThat(loaded.getString("database.user"), is("main"));
+        assertThat(loaded.getString("database.url"), is("shared_url"));
+        assertThat(loaded.root().containsKey(IncludingSourceLoader.INCLUDE_KEY), is(false));
+    }
+
+    @Test
+    void includesSourcesOfEitherFormatFromHocon() {
+        sources.put("main.conf", "include \"base.yml\"\ninclude \"optional.conf\"\nb = main\nnested { include required(\"nested.conf\") }\n");
+        sources.put("base.yml", "a: base\nb: base\n");
+        sources.put("nested.conf", "c = nested");
+
+        Config loaded = load("main.conf");
+        assertThat(loaded.getString("a"), is("base"));
+        assertThat(loaded.getString("b"), is("main"));
+        assertThat(loaded.getString("nested.c"), is("nested"));
+    }
+
+    @Test
+    void failsIfRequiredSourceIsNotFound() {
+        sources.put("main.conf", "include required(\"missing.conf\")\n");
+        sources.put("main.yml", "$include: missing.yml\n");
+
+        assertThrows(RuntimeException.class, () -> load("main.conf"));
+        RuntimeException yamlFailure = assertThrows(RuntimeException.class, () -> load("main.yml"));
+        assertThat(yamlFailure.getMessage(), containsString("missing.yml"));
+    }
+
+    @Test
+    void loadsSourceIncludedFromSeveralPlacesOnlyOnce() {
+        sources.put("main.yml", "$include: [a.yml, b.conf]\n");
+        sources.put("a.yml", "$include: common.yml\na: 1\n");
+        sources.put("b.conf", "include \"common.yml\"\nb = 2\n");
+        sources.put("common.yml", "common: true\n");
+
+        ConfigurationBuildTimings timings = new ConfigurationBuildTimings();
+        Config loaded = new IncludingSourceLoader(sourceProvider, null, timings).load("main.yml");
+        assertThat(loaded.getBoolean("common"), is(true));
+        assertThat(opened.get("common.yml"), is(1));
+        assertThat(timings.getPhaseTimings().stream()
+                .filter(timing -> timing.phase == ConfigurationBuildTimings.Phase.PARSE && "common.yml".equals(timing.source)).count(), is(1L));
+    }
+
+    @Test
+    void includesEverySourceFoundWithTheExtensionsOfTypesafeConfigForPathWithoutExtension() {
+        sources.put("main.conf", "include \"base\"\nmain = true\n");
+        sources.put("base.conf", "a = conf\n");
+        sources.put("base.json", "{ \"a\": \"json\", \"b\": \"json\" }");
+        sources.put("base.properties", "b=properties\nc=properties\n");
+
+        Config loaded = load("main.conf");
+        assertThat(loaded.getString("a"), is("conf"));
+        assertThat(loaded.getString("b"), is("json"));
+        assertThat(loaded.getString("c"), is("properties"));
+        assertThat(loaded.getBoolean("main"), is(true));
+
+        sources.put("required.conf", "include required(\"missing\")\n");
+        RuntimeException missing = assertThrows(RuntimeException.class, () -> load("required.conf"));
+        assertThat(missing.getMessage(), containsString("missing.conf, missing.json, missing.properties"));
+    }
+
+    @Test
+    void failsIfOptionallyIncludedSourceIsFoundButCanNotBeLoaded() {
+        sources.put("main.conf", "include \"a.yml\"\nmain = true\n");
+        sources.put("a.yml", "$include: missing.yml\na: 1\n");
+
+        RuntimeException nestedMissing = assertThrows(RuntimeException.class, () -> load("main.conf"));
+        assertThat(nestedMissing.getMessage(), containsString("missing.yml"));
+
+        ConfigurationSourceProvider failingToRead = path -> {
+            if (path.equals("a.yml")) {
+                throw new IOException("Permission denied");
+            }
+            return sourceProvider.open(path);
+        };
+        ParsedSourceCache.shared.clear();
+        RuntimeException unreadable = assertThrows(RuntimeException.class,
+                () -> new IncludingSourceLoader(failingToRead, null, new ConfigurationBuildTimings()).load("main.conf"));
+        assertThat(unreadable.getMessage(), containsString("Permission denied"));
+    }
+
+    @Test
+    void doesNotLoadIncludesInCommentsOrStringValues() {
+        sources.put("main.conf", "# include \"commented.conf\"\n// include required(\"alsoCommented.conf\")\na = \"include \\\"string.conf\\\"\"\n");
+
+        ConfigurationBuildTimings timings = new ConfigurationBuildTimings();
+        Config loaded = new IncludingSourceLoader(sourceProvider, null, timings).load("main.conf");
+        assertThat(loaded.getString("a"), is("include \"string.conf\""));
+        assertThat(opened.keySet(), is(Set.of("main.conf")));
+        assertThat(timings.getPhaseTimings().stream().filter(timing -> timing.phase == ConfigurationBuildTimings.Phase.PARSE).count(), is(1L));
+    }
+
+    @Test
+    void loadsSourceIncludedByBothMainAndSecretConfigOnlyOnce() throws Exception {
+        sources.put("config.yml", "$include: database.yml\n");
+        sources.put("secret.yml", "$include: database.yml\ndatabase:\n  password: secret\n");
+        sources.put("database.yml", "database:\n  driverClass: org.postgresql.Driver\n  url: shared_url\n  user: shared_user\n");
+
+        TypeSafeConfigurationFactory<TestConfig> factory = new TypeSafeConfigurationFactory<>(TestConfig.class,
+                Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(), Jackson.newObjectMapper(), "dw");
+        TestConfig config = factory.buildResolved(sourceProvider, "config.yml", ConfigurationBuildContext.forEnvironments("test").withSecret("secret.yml")).getConfiguration();
+        assertThat(config.database.getPassword(), is("secret"));
+        assertThat(opened.get("database.yml"), is(1));
+    }
+
+    @Test
+    void loadsIncludedSourcesConcurrently() {
+        CountDownLatch bothOpened = new CountDownLatch(2);
+        sources.put("main.yml", "$include: [a.yml, b.yml]\n");
+        ConfigurationSourceProvider awaitingBoth = path -> {
+            if (!path.equals("main.yml")) {
+                bothOpened.countDown();
+                try {
+                    if (!bothOpened.await(5, TimeUnit.SECONDS)) {
+                        throw new IOException(path + " was not opened concurrently with the other included source");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                return new ByteArrayInputStream((path.charAt(0) + ": 1").getBytes(UTF_8));
+            }
+            return sourceProvider.open(path);
+        };
+
+        Config loaded = new IncludingSourceLoader(awaitingBoth, null, new ConfigurationBuildTimings()).load("main.yml");
+        assertThat(loaded.getInt("a") + loaded.getInt("b"), is(2));
+    }
+
+    @Test
+    void failsWithTheSourcesOfAnIncludeCycle() {
+        sources.put("main.yml", "$include: a.yml\n");
+        sources.put("a.yml", "$include: b.conf\n");
+        sources.put("b.conf", "include \"a.yml\"\n");
+
+        ConfigException.Parse cycle = assertThrows(ConfigException.Parse.class, () -> load("main.yml"));
+        assertThat(cycle.getMessage(), containsString("Include cycle: a.yml -> b.conf -> a.yml"));
+    }
+
+    @Test
+    void includedValuesCanBeOverriddenWithSubstitutionsResolvedFromOverrides() throws Exception {
+        sources.put("config.yml", "$include: database.yml\ndatabase:\n  url: ${DATABASE_URL}\n");
+        sources.put("database.yml", "database:\n  driverClass: org.postgresql.Driver\n  url: included_url\n  user: included_user\n");
+
+        TypeSafeConfigurationFactory<TestConfig> factory = new TypeSafeConfigurationFactory<>(TestConfig.class,
+                Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(), Jackson.newObjectMapper(), "dw");
+        TestConfig config = factory.buildResolved(sourceProvider, "config.yml", ConfigurationBuildContext.forEnvironments("test")
+                .withOverrides(ConfigFactory.parseMap(Map.of("DATABASE_URL", "overridden_url")))).getConfiguration();
+        assertThat(config.database.getUrl(), is("overridden_url"));
+        assertThat(config.database.getUser(), is("included_user"));
+    }
+
+    @Test
+    void resolvesPathsRelativeToIncludingSource() {
+        assertThat(IncludingSourceLoader.resolve("config/main.yml", "base.yml"), is("config/base.yml"));
+        assertThat(IncludingSourceLoader.resolve("main.yml", "base.yml"), is("base.yml"));
+        assertThat(IncludingSourceLoader.resolve("config/main.yml", "/etc/base.yml"), is("/etc/base.yml"));
+        assertThat(IncludingSourceLoader.resolve("https://config.example/app/main.yml", "base.yml"), is("https://config.example/app/base.yml"));
+        assertThat(IncludingSourceLoader.resolve("config/main.yml", "https://config.example/base.yml"), is("https://config.example/base.yml"));
+    }
+
+    private Config load(String path) {
+        return new IncludingSourceLoader(sourceProvider, null, new ConfigurationBuildTimings()).load(path);
+    }
+}
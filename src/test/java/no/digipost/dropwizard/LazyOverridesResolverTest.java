@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigResolveOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static no.digipost.dropwizard.LazyOverridesResolver.SYSTEM_PROPERTIES_AND_ENVIRONMENT;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class LazyOverridesResolverTest {
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("lazy.a");
+        System.clearProperty("lazy.b.c");
+        System.clearProperty("lazy.b.d");
+        ConfigFactory.invalidateCaches();
+    }
+
+    @Test
+    void looksUpSystemProperties() {
+        System.setProperty("lazy.a", "from property");
+
+        assertThat(SYSTEM_PROPERTIES_AND_ENVIRONMENT.lookup("lazy.a").unwrapped(), is("from property"));
+        assertThat(SYSTEM_PROPERTIES_AND_ENVIRONMENT.lookup("lazy.missing"), nullValue());
+    }
+
+    @Test
+    void looksUpObjectsOfSeveralSystemProperties() {
+        System.setProperty("lazy.b.c", "1");
+        System.setProperty("lazy.b.d", "2");
+        ConfigFactory.invalidateCaches();
+
+        assertThat(SYSTEM_PROPERTIES_AND_ENVIRONMENT.lookup("lazy.b").unwrapped(), is(Map.of("c", "1", "d", "2")));
+    }
+
+    @Test
+    void looksUpEnvironmentVariablesAfterSystemProperties() {
+        String variable = System.getenv().keySet().stream().filter(name -> !name.contains(".")).findFirst().orElseThrow();
+        assertThat(SYSTEM_PROPERTIES_AND_ENVIRONMENT.lookup(variable).unwrapped(), is(System.getenv(variable)));
+
+        System.setProperty("lazy.a", "from property");
+        assertThat(SYSTEM_PROPERTIES_AND_ENVIRONMENT.withFallback(SYSTEM_PROPERTIES_AND_ENVIRONMENT).lookup("lazy.a").unwrapped(), is("from property"));
+    }
+
+    @Test
+    void resolvesSameAsDefaultOverrides() {
+        System.setProperty("lazy.a", "from property");
+        System.setProperty("lazy.b.c", "1");
+        ConfigFactory.invalidateCaches();
+        Config config = ConfigFactory.parseString("a = ${lazy.a}, b = ${lazy.b}, c = ${?lazy.missing}, d = ${unresolved}");
+
+        Config lazilyResolved = config.resolveWith(ConfigFactory.empty(), ConfigResolveOptions.defaults()
+                .setUseSystemEnvironment(false).setAllowUnresolved(true).appendResolver(SYSTEM_PROPERTIES_AND_ENVIRONMENT));
+        Config resolved = config.resolveWith(ConfigFactory.defaultOverrides(), ConfigResolveOptions.defaults().setAllowUnresolved(true));
+
+        assertThat(lazilyResolved.withoutPath("d").root().unwrapped(), is(resolved.withoutPath("d").root().unwrapped()));
+        assertThat(lazilyResolved.isResolved(), is(false));
+    }
+}
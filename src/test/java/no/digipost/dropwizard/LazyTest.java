@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.ConfigurationValidationException;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidationException;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.NotNull;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LazyTest {
+
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+    private final TypeSafeConfigurationFactory<LazyConfig> configFactory = new TypeSafeConfigurationFactory<>(
+            LazyConfig.class, Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(),
+            objectMapper, "dw");
+
+    @Test
+    void bindsSectionOnlyWhenAccessed() throws Exception {
+        LazyConfig config = build("name = eager, lookup { name = lazy, values { a = 1, b = 2 } }");
+
+        assertThat(config.name, is("eager"));
+        assertThat(config.lookup.isBound(), is(false));
+        assertThat(config.lookup.get().name, is("lazy"));
+        assertThat(config.lookup.get().values, is(Map.of("a", 1, "b", 2)));
+        assertThat(config.lookup.isBound(), is(true));
+    }
+
+    @Test
+    void invalidSectionFailsOnlyWhenAccessedAndThenEveryTime() throws Exception {
+        LazyConfig config = build("name = eager, lookup { values { a = notANumber } }, invalid { values { a = 1 } }");
+
+        Lazy.CannotBindLazyConfiguration notBindable = assertThrows(Lazy.CannotBindLazyConfiguration.class, () -> config.lookup.get());
+        assertThat(notBindable.getMessage(), containsString("/lookup"));
+        assertThat(assertThrows(Lazy.CannotBindLazyConfiguration.class, () -> config.lookup.get()), sameInstance(notBindable));
+
+        Lazy.CannotBindLazyConfiguration invalid = assertThrows(Lazy.CannotBindLazyConfiguration.class, () -> config.invalid.get());
+        assertThat(invalid.getCause(), instanceOf(ConfigurationValidationException.class));
+        assertThat(invalid.getMessage(), containsString("name must not be null"));
+    }
+
+    @Test
+    void failingValidatorFailsWithTheSameExceptionEveryTime() {
+        AtomicInteger validations = new AtomicInteger();
+        Validator failingValidator = (Validator) Proxy.newProxyInstance(Validator.class.getClassLoader(), new Class<?>[] {Validator.class}, (proxy, method, args) -> {
+            validations.incrementAndGet();
+            throw new ValidationException("invalid constraint definition");
+        });
+        Lazy<LookupSection> lookup = new Lazy<>("/lookup", objectMapper.constructType(LookupSection.class),
+                objectMapper.createObjectNode().put("name", "lazy"), objectMapper, failingValidator);
+
+        Lazy.CannotBindLazyConfiguration failure = assertThrows(Lazy.CannotBindLazyConfiguration.class, lookup::get);
+        assertThat(failure.getCause(), instanceOf(ValidationException.class));
+        assertThat(assertThrows(Lazy.CannotBindLazyConfiguration.class, lookup::get), sameInstance(failure));
+        assertThat(validations.get(), is(1));
+    }
+
+    @Test
+    void bindsAtMostOnceWhenAccessedConcurrently() throws Exception {
+        LazyConfig config = build("name = eager, lookup { name = lazy }");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<LookupSection>> accesses = IntStream.range(0, 32)
+                    .mapToObj(i -> executor.submit(config.lookup::get))
+                    .collect(toList());
+            for (Future<LookupSection> access : accesses) {
+                assertThat(access.get(), sameInstance(config.lookup.get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void doesNotChangeGivenObjectMapper() throws Exception {
+        build("name = eager");
+        assertThat(objectMapper.getRegisteredModuleIds().contains(LazyModule.class.getSimpleName()), is(false));
+    }
+
+    private LazyConfig build(String config) throws Exception {
+        ConfigurationSourceProvider sourceProvider = path -> new ByteArrayInputStream(config.getBytes(UTF_8));
+        return configFactory.buildResolved(sourceProvider, "lazy.conf", ConfigurationBuildContext.forEnvironments("test")).getConfiguration();
+    }
+
+    static class LazyConfig {
+        @NotNull
+        @JsonProperty
+        public String name;
+
+        @JsonProperty
+        public Lazy<LookupSection> lookup;
+
+        @JsonProperty
+        public Lazy<LookupSection> invalid;
+    }
+
+    static class LookupSection {
+        @NotNull
+        @JsonProperty
+        public String name;
+
+        @JsonProperty
+        public Map<String, Integer> values;
+    }
+}
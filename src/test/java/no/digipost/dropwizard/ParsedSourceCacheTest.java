@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import no.digipost.dropwizard.configuration.ConfigurationSourceProviderWithFallback;
+import no.digipost.dropwizard.configuration.FileChannelConfigurationSourceProvider;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.OPEN;
+import static no.digipost.dropwizard.ConfigurationBuildTimings.Phase.PARSE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+class ParsedSourceCacheTest {
+
+    private final TypeSafeConfigurationFactory<TestConfig> configFactory = new TypeSafeConfigurationFactory<>(
+            TestConfig.class, Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(),
+            Jackson.newObjectMapper(), "dw");
+    private final ConfigurationSourceProvider sourceProvider = new ResourceConfigurationSourceProvider();
+
+    @Test
+    void evictsLeastRecentlyUsedSource() {
+        ParsedSourceCache cache = new ParsedSourceCache(2);
+        byte[] digest = ParsedSourceCache.digest(ByteBuffer.wrap("a = 1".getBytes(UTF_8)));
+        cache.put("a.conf", null, null, digest, ConfigFactory.parseString("a = 1"));
+        cache.put("b.conf", null, null, digest, ConfigFactory.parseString("a = 1"));
+        cache.get("a.conf", null, digest);
+        cache.put("c.conf", null, null, digest, ConfigFactory.parseString("a = 1"));
+
+        assertThat(cache.get("a.conf", null, digest).isPresent(), is(true));
+        assertThat(cache.get("b.conf", null, digest), is(Optional.empty()));
+        assertThat(cache.get("c.conf", null, digest).isPresent(), is(true));
+    }
+
+    @Test
+    void onlyReusesSourceWithSameContentAndPrunedEnvironments() {
+        ParsedSourceCache cache = new ParsedSourceCache(8);
+        Config parsed = ConfigFactory.parseString("a = 1");
+        byte[] digest = ParsedSourceCache.digest(ByteBuffer.wrap("a = 1".getBytes(UTF_8)));
+        cache.put("a.conf", null, null, digest, parsed);
+
+        assertThat(cache.get("a.conf", null, digest).get(), sameInstance(parsed));
+        assertThat(cache.get("a.conf", null, ParsedSourceCache.digest(ByteBuffer.wrap("a = 2".getBytes(UTF_8)))), is(Optional.empty()));
+        assertThat(cache.get("a.conf", Set.of("local"), digest), is(Optional.empty()));
+    }
+
+    @Test
+    void reusesParsedSourcesForBuildsOfOtherEnvironments() throws Exception {
+        ParsedSourceCache.shared.clear();
+        configFactory.buildResolved(sourceProvider, "test-config.yml", ConfigurationBuildContext.forEnvironments("local"));
+
+        ConfigurationBuildTimings timings = configFactory.buildResolved(
+                sourceProvider, "test-config.yml", ConfigurationBuildContext.forEnvironments("test")).getBuildTimings();
+        assertThat(timings.getPhaseTimings().stream().filter(timing -> timing.phase == PARSE).collect(toList()), empty());
+    }
+
+    @Test
+    void reusesParsedSourcesReadThroughSeparateProviderInstances() throws Exception {
+        ParsedSourceCache.shared.clear();
+        configFactory.buildResolved(new ConfigurationSourceProviderWithFallback(
+                new FileChannelConfigurationSourceProvider(), new ResourceConfigurationSourceProvider()), "test-config.yml", ConfigurationBuildContext.forEnvironments("test"));
+
+        ConfigurationBuildTimings timings = configFactory.buildResolved(new ConfigurationSourceProviderWithFallback(
+                new FileChannelConfigurationSourceProvider(), new ResourceConfigurationSourceProvider()), "test-config.yml", ConfigurationBuildContext.forEnvironments("test")).getBuildTimings();
+        assertThat(timings.getPhaseTimings().stream().filter(timing -> timing.phase == PARSE).collect(toList()), empty());
+    }
+
+    @Test
+    void doesNotReadUnmodifiedFilesAgain(@TempDir Path directory) throws Exception {
+        Path config = Files.copy(Paths.get(getClass().getResource("/test-config.yml").toURI()), directory.resolve("test-config.yml"));
+        Files.setLastModifiedTime(config, FileTime.from(Instant.now().minus(1, MINUTES)));
+        ConfigurationBuildContext context = ConfigurationBuildContext.forEnvironments("test");
+        configFactory.buildResolved(new FileConfigurationSourceProvider(), config.toString(), context);
+
+        ConfigurationBuildTimings unmodified = configFactory.buildResolved(new FileConfigurationSourceProvider(), config.toString(), context).getBuildTimings();
+        assertThat(unmodified.getPhaseTimings().stream().filter(timing -> timing.phase == OPEN || timing.phase == PARSE).collect(toList()), empty());
+
+        Files.writeString(config, Files.readString(config).replace("test_url", "modified_url"));
+        ResolvedConfiguration<TestConfig> modified = configFactory.buildResolved(new FileConfigurationSourceProvider(), config.toString(), context);
+        assertThat(modified.getConfiguration().database.getUrl(), is("modified_url"));
+    }
+
+    @Test
+    void readsFilesModifiedWithinTheGranularityOfTheModifiedTimeAgain(@TempDir Path directory) throws Exception {
+        Path config = Files.copy(Paths.get(getClass().getResource("/test-config.yml").toURI()), directory.resolve("test-config.yml"));
+        FileTime lastModified = Files.getLastModifiedTime(config);
+        ConfigurationBuildContext context = ConfigurationBuildContext.forEnvironments("test");
+        configFactory.buildResolved(new FileConfigurationSourceProvider(), config.toString(), context);
+
+        Files.writeString(config, Files.readString(config).replace("test_url", "edit_url"));
+        Files.setLastModifiedTime(config, lastModified);
+        ResolvedConfiguration<TestConfig> modified = configFactory.buildResolved(new FileConfigurationSourceProvider(), config.toString(), context);
+        assertThat(modified.getConfiguration().database.getUrl(), is("edit_url"));
+    }
+}
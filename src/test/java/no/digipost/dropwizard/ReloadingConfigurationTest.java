@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.configuration.ConfigurationException;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import no.digipost.dropwizard.configuration.MemoizingConfigurationSourceProviderWithFallback;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.ENV_KEY;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class ReloadingConfigurationTest {
+
+    private static final Validator validator = Validation.byProvider(HibernateValidator.class).configure()
+                                                  .buildValidatorFactory().getValidator();
+    private static final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+    private final TypeSafeConfigurationFactory<TestConfig> configFactory =
+        new TypeSafeConfigurationFactory<>(TestConfig.class, validator, objectMapper, "dw");
+    private final ConfigurationSourceProvider configSourceProvider = new FileConfigurationSourceProvider();
+
+    @TempDir
+    Path configDirectory;
+
+    private Path configFile;
+    private ReloadingConfiguration<TestConfig> reloadingConfiguration;
+
+    @BeforeEach
+    void setUp() throws IOException, ConfigurationException {
+        System.setProperty(ENV_KEY, "test");
+        configFile = configDirectory.resolve("config.yml");
+        writeConfig("initial");
+        ResolvedConfiguration<TestConfig> initial = configFactory.buildResolved(configSourceProvider, configFile.toString());
+        reloadingConfiguration = new ReloadingConfiguration<>(
+                configFactory, configSourceProvider, configFile.toString(), List.of(), initial, Duration.ofMillis(20));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        reloadingConfiguration.stop();
+        System.clearProperty(ENV_KEY);
+    }
+
+    @Test
+    void reloadsWhenConfigFileChanges() throws Exception {
+        reloadingConfiguration.start();
+        writeConfig("changed");
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!reloadingConfiguration.get().environment.equals("changed") && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(reloadingConfiguration.get().environment, is("changed"));
+    }
+
+    @Test
+    void doesNotReloadUnchangedConfig() {
+        assertThat(reloadingConfiguration.reloadIfChanged(), is(true));
+        assertThat(reloadingConfiguration.reloadIfChanged(), is(false));
+    }
+
+    @Test
+    void keepsLastValidConfigWhenReloadedConfigIsInvalid() throws IOException {
+        Files.write(configFile, "database:\n  driverClass: null\nenvironment: invalid\n".getBytes(UTF_8));
+
+        assertThat(reloadingConfiguration.reloadIfChanged(), is(false));
+        assertThat(reloadingConfiguration.get().environment, is("initial"));
+    }
+
+    @Test
+    void notifiesListenersOfChangedPathsOnly() throws Exception {
+        BlockingQueue<Set<String>> environmentChanges = new LinkedBlockingQueue<>();
+        BlockingQueue<Set<String>> databaseChanges = new LinkedBlockingQueue<>();
+        reloadingConfiguration.onChange("environment", (config, changedPaths) -> environmentChanges.add(changedPaths));
+        reloadingConfiguration.onChange("database.user", (config, changedPaths) -> databaseChanges.add(changedPaths));
+
+        writeConfig("changed");
+        assertThat(reloadingConfiguration.reloadIfChanged(), is(true));
+
+        assertThat(environmentChanges.poll(10, SECONDS), contains("environment"));
+        assertThat(databaseChanges.poll(100, MILLISECONDS), nullValue());
+    }
+
+    @Test
+    void reloadsFromMainProviderOfMemoizingProviderWhenAddedAfterFallback() throws Exception {
+        Map<String, String> mainSources = new ConcurrentHashMap<>();
+        MemoizingConfigurationSourceProviderWithFallback memoizing = new MemoizingConfigurationSourceProviderWithFallback(path -> {
+            if (!mainSources.containsKey(path)) {
+                throw new FileNotFoundException(path);
+            }
+            return new ByteArrayInputStream(mainSources.get(path).getBytes(UTF_8));
+        }, configSourceProvider);
+        ResolvedConfiguration<TestConfig> initial = configFactory.buildResolved(memoizing, configFile.toString());
+        ReloadingConfiguration<TestConfig> reloading = new ReloadingConfiguration<>(
+                configFactory, memoizing, configFile.toString(), List.of(), initial, Duration.ofMillis(20));
+
+        mainSources.put(configFile.toString(), "database:\n  driverClass: org.postgresql.Driver\n  url: jdbc:postgresql://db/app\nenvironment: main\n");
+        assertThat(reloading.reloadIfChanged(), is(true));
+        assertThat(reloading.get().environment, is("main"));
+    }
+
+    private void writeConfig(String environment) throws IOException {
+        Files.write(configFile, ("database:\n  driverClass: org.postgresql.Driver\n  url: jdbc:postgresql://db/app\nenvironment: " + environment + "\n").getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.dropwizard.configuration.ConfigurationValidationException;
+import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
+import io.dropwizard.jackson.Jackson;
+import jakarta.validation.Validation;
+import org.hibernate.validator.HibernateValidator;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TenantConfigurationsTest {
+
+    private final TypeSafeConfigurationFactory<TestConfig> configFactory = new TypeSafeConfigurationFactory<>(
+            TestConfig.class, Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator(),
+            Jackson.newObjectMapper(), "dw");
+
+    @Test
+    void overlayTakesPrecedenceOverEnvironmentSpecificValuesOfBase() throws Exception {
+        TenantConfigurations<TestConfig> tenants = configFactory.forTenants(
+                new ResourceConfigurationSourceProvider(), "test-config.yml", ConfigurationBuildContext.forEnvironments("test"));
+
+        TestConfig tenant = tenants.build("a", ConfigFactory.parseString("database.driverClass = tenantDriver")).getConfiguration();
+        assertThat(tenant.database.getDriverClass(), is("tenantDriver"));
+        assertThat(tenant.database.getUrl(), is("test_url"));
+    }
+
+    @Test
+    void overlayIsReducedToEnvironmentsAndCanBeReferredToFromBase() throws Exception {
+        TenantConfigurations<TestConfig> tenants = configFactory.forTenants(
+                new ResourceConfigurationSourceProvider(), "test-config.yml", ConfigurationBuildContext.forEnvironments("local"));
+
+        TestConfig tenant = tenants.build("a", ConfigFactory.parseString(
+                "environments { local.variables.testvar1 = tenantVariable, test.database.url = ignored }")).getConfiguration();
+        assertThat(tenant.database.getPassword(), is("tenantVariable"));
+        assertThat(tenant.database.getUrl(), is("local_url"));
+    }
+
+    @Test
+    void secretTakesPrecedenceOverOverlay() throws Exception {
+        TenantConfigurations<TestConfig> tenants = configFactory.forTenants(new ResourceConfigurationSourceProvider(), "test-config.yml",
+                ConfigurationBuildContext.forEnvironments("test").withSecret("test-secret.yml"));
+
+        TestConfig tenant = tenants.build("a", ConfigFactory.parseString("database.password = tenantPassword, database.user = tenantUser")).getConfiguration();
+        assertThat(tenant.database.getPassword(), is("secret_password"));
+        assertThat(tenant.database.getUser(), is("tenantUser"));
+        assertThat(tenant.secrets.verySecret, is("keep this to yourself!"));
+    }
+
+    @Test
+    void resolvesOnlyOverlayOnTopOfResolvedBase() throws Exception {
+        TenantConfigurations<TestConfig> tenants = configFactory.forTenants(
+                new ResourceConfigurationSourceProvider(), "test-config.yml", ConfigurationBuildContext.forEnvironments("test"));
+
+        ResolvedConfiguration<TestConfig> tenant = tenants.build("a", ConfigFactory.parseString("database.url = ${database.driverClass}\"/tenant\""));
+        assertThat(tenant.getConfiguration().database.getUrl(), is("overridden/tenant"));
+        assertThat(tenant.getConfiguration().database.getPassword(), is("default variable value"));
+        long resolvedNodes = tenant.getBuildTimings().getPhaseTimings().stream()
+                .filter(timing -> timing.phase == ConfigurationBuildTimings.Phase.RESOLVE && timing.source == null).mapToLong(timing -> timing.size).sum();
+        assertThat(resolvedNodes, is(3L));
+    }
+
+    @Test
+    void loadsOverlayFromSourceProvider() throws Exception {
+        TenantConfigurations<TestConfig> tenants = configFactory.forTenants(
+                new ResourceConfigurationSourceProvider(), "test-config.yml", ConfigurationBuildContext.forEnvironments("test"));
+
+        TestConfig tenant = tenants.build("a", "test-secret.yml").getConfiguration();
+        assertThat(tenant.database.getPassword(), is("secret_password"));
+    }
+
+    @Test
+    void buildsManyTenantsConcurrentlySharingUnchangedSubtreesOfBase() throws Exception {
+        TenantConfigurations<TestConfig> tenants = configFactory.forTenants(
+                new ResourceConfigurationSourceProvider(), "test-config.yml", ConfigurationBuildContext.forEnvironments("local"));
+        Map<String, Config> overlays = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            overlays.put("tenant" + i, ConfigFactory.parseString("database.user = user" + i));
+        }
+
+        Map<String, ResolvedConfiguration<TestConfig>> built = tenants.buildAll(overlays);
+
+        for (int i = 0; i < 500; i++) {
+            assertThat(built.get("tenant" + i).getConfiguration().database.getUser(), is("user" + i));
+        }
+        assertThat(built.get("tenant1").getConfigObject().get("secrets"), sameInstance(built.get("tenant2").getConfigObject().get("secrets")));
+    }
+
+    @Test
+    void throwsExceptionOfFirstFailingTenant() throws Exception {
+        TenantConfigurations<TestConfig> tenants = configFactory.forTenants(
+                new ResourceConfigurationSourceProvider(), "test-config.yml", ConfigurationBuildContext.forEnvironments("test"));
+        Map<String, Config> overlays = new LinkedHashMap<>();
+        overlays.put("valid", ConfigFactory.empty());
+        overlays.put("invalid", ConfigFactory.parseString("database.maxSize = 0"));
+        overlays.put("alsoInvalid", ConfigFactory.parseString("database.minSize = -1"));
+
+        ConfigurationValidationException failure = assertThrows(ConfigurationValidationException.class, () -> tenants.buildAll(overlays));
+        assertThat(failure.getMessage(), containsString("for tenant invalid"));
+        assertThat(failure.getSuppressed().length, is(1));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard;
+
+import io.dropwizard.configuration.ConfigurationFactoryFactory;
+import io.dropwizard.configuration.FileConfigurationSourceProvider;
+import io.dropwizard.core.Application;
+import io.dropwizard.core.Configuration;
+import io.dropwizard.core.cli.Command;
+import io.dropwizard.core.setup.Bootstrap;
+import io.dropwizard.core.setup.Environment;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.ENV_KEY;
+import static no.digipost.dropwizard.TypeSafeConfigurationFactory.PRECOMPILED_CONFIG_KEY;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TypeSafeConfiguredBundleTest {
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(ENV_KEY);
+        System.clearProperty(PRECOMPILED_CONFIG_KEY);
+    }
+
+    @Test
+    void reloadsFromTheConfigurationFileWhenBuiltFromPrecompiledConfig(@TempDir Path directory) throws Exception {
+        Path config = Files.copy(Paths.get(getClass().getResource("/test-config.yml").toURI()), directory.resolve("test-config.yml"));
+        ConfigurationPrecompiler.precompile(config, directory, List.of("test"));
+        System.setProperty(ENV_KEY, "test");
+        System.setProperty(PRECOMPILED_CONFIG_KEY, "true");
+
+        TypeSafeConfiguredBundle<TestConfig> bundle = new TypeSafeConfiguredBundle<TestConfig>(new FileConfigurationSourceProvider())
+                .withReloading(Duration.ofMinutes(1));
+        Bootstrap<Configuration> bootstrap = new Bootstrap<>(new TestApplication());
+        bundle.initialize(bootstrap);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ConfigurationFactoryFactory<TestConfig> factoryFactory = (ConfigurationFactoryFactory) bootstrap.getConfigurationFactoryFactory();
+        TestConfig built = factoryFactory.create(TestConfig.class, bootstrap.getValidatorFactory().getValidator(), bootstrap.getObjectMapper(), "dw")
+                .build(bootstrap.getConfigurationSourceProvider(), config.toString());
+        bundle.run(built, new Environment("test"));
+
+        ReloadingConfiguration<TestConfig> reloading = bundle.getReloadingConfiguration();
+        Files.writeString(config, Files.readString(config).replace("test_url", "reloaded_test_url"));
+        assertThat(reloading.reload(), is(true));
+        assertThat(reloading.get().database.getUrl(), is("reloaded_test_url"));
+    }
+
+    @Test
+    void registersValidateEnvironmentsCommandForTheConfigurationClassOfTheApplication() throws Exception {
+        TypeSafeConfiguredBundle<Configuration> bundle = new TypeSafeConfiguredBundle<Configuration>().withValidateEnvironmentsCommand();
+        Bootstrap<Configuration> bootstrap = new Bootstrap<>(new TestApplication());
+        bundle.initialize(bootstrap);
+
+        Command command = bootstrap.getCommands().stream().filter(registered -> registered.getName().equals("validate-environments")).findFirst().orElseThrow();
+        IllegalStateException invalid = assertThrows(IllegalStateException.class, () -> command.run(bootstrap, new Namespace(Map.of("file", "test-config.yml"))));
+        assertThat(invalid.getMessage(), containsString("test-config.yml is invalid for 3 environments"));
+    }
+
+    private static final class TestApplication extends Application<Configuration> {
+        @Override
+        public void run(Configuration configuration, Environment environment) {
+        }
+    }
+}
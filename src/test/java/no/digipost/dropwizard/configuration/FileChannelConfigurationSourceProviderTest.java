@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileChannelConfigurationSourceProviderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsFileIntoHeapBuffer() throws IOException {
+        Path file = Files.writeString(directory.resolve("config.yml"), "a: 1\n".repeat(300_000));
+
+        try (InputStream source = new FileChannelConfigurationSourceProvider().open(file.toString())) {
+            ByteBuffer content = ((ByteBufferInputStream) source).buffer();
+            assertThat(content.isDirect(), is(false));
+            assertThat(content.remaining(), is(1_500_000));
+            assertThat(new String(source.readAllBytes(), UTF_8), is("a: 1\n".repeat(300_000)));
+        }
+    }
+
+    @Test
+    void readsEmptyFile() throws IOException {
+        Path file = Files.createFile(directory.resolve("empty.yml"));
+
+        try (InputStream source = new FileChannelConfigurationSourceProvider().open(file.toString())) {
+            assertThat(source.read(), is(-1));
+        }
+    }
+
+    @Test
+    void missingFileIsIOException() {
+        assertThrows(NoSuchFileException.class, () -> new FileChannelConfigurationSourceProvider().open(directory.resolve("missing.yml").toString()));
+    }
+}
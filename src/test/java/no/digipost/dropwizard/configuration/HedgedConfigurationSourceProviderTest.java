@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard.configuration;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static uk.co.probablyfine.matchers.Java8Matchers.where;
+
+class HedgedConfigurationSourceProviderTest {
+
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    @Test
+    void resolvesFromFirstProviderWithoutTryingTheOthers() throws IOException {
+        HedgedConfigurationSourceProvider provider = new HedgedConfigurationSourceProvider(Duration.ofMinutes(1), Duration.ofMinutes(1),
+                path -> source("first"),
+                path -> { throw new AssertionError("second provider should not be invoked"); });
+
+        assertThat(read(provider.open("path")), is("first"));
+    }
+
+    @Test
+    void failureTriesNextProviderWithoutWaitingForHedgeDelay() {
+        HedgedConfigurationSourceProvider provider = new HedgedConfigurationSourceProvider(Duration.ofMinutes(1), Duration.ofMinutes(1),
+                path -> { throw new FileNotFoundException(path); },
+                path -> { throw new FileNotFoundException(path); },
+                path -> source("third"));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThat(read(provider.open("path")), is("third")));
+    }
+
+    @Test
+    void stalledProviderIsHedgedAndItsLateSourceIsClosed() throws Exception {
+        HedgedConfigurationSourceProvider provider = new HedgedConfigurationSourceProvider(Duration.ofMillis(10), Duration.ofMillis(200),
+                path -> { awaitRelease(); return closeTracking("first"); },
+                path -> source("second"));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThat(read(provider.open("path")), is("second")));
+        released.countDown();
+        assertThat(closed.await(10, SECONDS), is(true));
+    }
+
+    @Test
+    void higherPrioritySourceIsPreferredWithinDeadline() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        HedgedConfigurationSourceProvider provider = new HedgedConfigurationSourceProvider(Duration.ZERO, Duration.ofMinutes(1),
+                path -> { awaitRelease(); return source("first"); },
+                path -> { opened.incrementAndGet(); released.countDown(); return closeTracking("second"); });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThat(read(provider.open("path")), is("first")));
+        assertAll(
+                () -> assertThat(opened.get(), is(1)),
+                () -> assertThat(closed.await(10, SECONDS), is(true)));
+    }
+
+    @Test
+    void failuresFromEveryProviderAreCollected() {
+        HedgedConfigurationSourceProvider provider = new HedgedConfigurationSourceProvider(Duration.ZERO, Duration.ofMillis(200),
+                path -> { throw new FileNotFoundException(path + " not found"); },
+                path -> { awaitRelease(); return source("too late"); },
+                path -> { throw new FileNotFoundException(path + " not found either"); });
+
+        ConfigurationSourceNotFoundException notFound = assertThrows(ConfigurationSourceNotFoundException.class, () -> provider.open("some/path"));
+        released.countDown();
+        assertAll(
+                () -> assertThat(notFound.getCause(), where(Throwable::getMessage, is("some/path not found"))),
+                () -> assertThat(notFound.getSuppressed(), arrayContaining(
+                        instanceOf(TimeoutException.class), where(Throwable::getMessage, is("some/path not found either")))));
+    }
+
+    private void awaitRelease() throws InterruptedIOException {
+        try {
+            released.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static InputStream source(String content) {
+        return new ByteArrayInputStream(content.getBytes());
+    }
+
+    private InputStream closeTracking(String content) {
+        return new ByteArrayInputStream(content.getBytes()) {
+            @Override
+            public void close() throws IOException {
+                closed.countDown();
+                super.close();
+            }
+        };
+    }
+
+    private static String read(InputStream source) throws IOException {
+        try (source) {
+            return new String(source.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard.configuration;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dropwizard.configuration.ConfigurationSourceProvider;
+import io.dropwizard.configuration.ResourceConfigurationSourceProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpConfigurationSourceProviderTest {
+
+    @TempDir
+    Path cacheDirectory;
+
+    private HttpServer server;
+    private final List<String> ifNoneMatchHeaders = new CopyOnWriteArrayList<>();
+    private volatile String content = "a: 1\n";
+    private volatile String etag = "\"v1\"";
+    private volatile int failingStatus = 0;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/config.yml", this::serveConfig);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void serveConfig(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        ifNoneMatchHeaders.add(String.valueOf(ifNoneMatch));
+        if (failingStatus != 0) {
+            exchange.sendResponseHeaders(failingStatus, -1);
+        } else if (etag.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            byte[] body = content.getBytes(UTF_8);
+            exchange.getResponseHeaders().add("ETag", etag);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    private String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/config.yml";
+    }
+
+    @Test
+    void revalidatesCachedCopyWithETag() throws IOException {
+        HttpConfigurationSourceProvider provider = new HttpConfigurationSourceProvider(cacheDirectory, Duration.ofHours(1));
+
+        assertThat(read(provider, url()), is("a: 1\n"));
+        assertThat(read(provider, url()), is("a: 1\n"));
+        content = "a: 2\n";
+        etag = "\"v2\"";
+        assertThat(read(provider, url()), is("a: 2\n"));
+        assertThat(read(provider, url()), is("a: 2\n"));
+
+        assertThat(ifNoneMatchHeaders, contains("null", "\"v1\"", "\"v1\"", "\"v2\""));
+    }
+
+    @Test
+    void usesCachedCopyWithinMaxStalenessWhenServerFails() throws IOException {
+        HttpConfigurationSourceProvider provider = new HttpConfigurationSourceProvider(cacheDirectory, Duration.ofHours(1));
+        read(provider, url());
+        failingStatus = 503;
+
+        assertThat(read(provider, url()), is("a: 1\n"));
+        server.stop(0);
+        assertThat(read(provider, url()), is("a: 1\n"));
+    }
+
+    @Test
+    void failsWhenCachedCopyIsTooStale() throws IOException {
+        HttpConfigurationSourceProvider provider = new HttpConfigurationSourceProvider(cacheDirectory, Duration.ZERO);
+        read(provider, url());
+        failingStatus = 503;
+
+        IOException failure = assertThrows(IOException.class, () -> read(provider, url()));
+        assertThat(failure.getMessage(), containsString("503"));
+        assertThat(failure.getMessage(), containsString("more than PT0S"));
+    }
+
+    @Test
+    void doesNotCachePartiallyReadBody() throws IOException {
+        HttpConfigurationSourceProvider provider = new HttpConfigurationSourceProvider(cacheDirectory, Duration.ofHours(1));
+        try (InputStream source = provider.open(url())) {
+            source.read();
+        }
+        failingStatus = 503;
+
+        assertThrows(IOException.class, () -> read(provider, url()));
+    }
+
+    @Test
+    void doesNotSupportMarkingBodyWhichIsCached() throws IOException {
+        HttpConfigurationSourceProvider provider = new HttpConfigurationSourceProvider(cacheDirectory, Duration.ofHours(1));
+        try (InputStream source = provider.open(url())) {
+            assertThat(source.markSupported(), is(false));
+            assertThat(new String(source.readAllBytes(), UTF_8), is("a: 1\n"));
+        }
+    }
+
+    @Test
+    void failsWhenBodyCanNotBeCached() throws IOException {
+        Path notADirectory = Files.createFile(cacheDirectory.resolve("not-a-directory"));
+        HttpConfigurationSourceProvider provider = new HttpConfigurationSourceProvider(notADirectory.resolve("cache"), Duration.ofHours(1));
+
+        assertThrows(IOException.class, () -> provider.open(url()));
+        assertThat(read(new HttpConfigurationSourceProvider(cacheDirectory, Duration.ofHours(1)), url()), is("a: 1\n"));
+    }
+
+    @Test
+    void pathsWhichAreNotHttpUrlsAreNotFound() throws IOException {
+        HttpConfigurationSourceProvider provider = new HttpConfigurationSourceProvider(cacheDirectory, Duration.ofHours(1));
+        assertThrows(ConfigurationSourceNotFoundException.class, () -> provider.open("test-config.yml"));
+
+        ConfigurationSourceProviderWithFallback withFallback = new ConfigurationSourceProviderWithFallback(provider, new ResourceConfigurationSourceProvider());
+        assertThat(read(withFallback, "test-config.yml"), containsString("environments"));
+        assertThat(read(withFallback, url()), is("a: 1\n"));
+    }
+
+    @Test
+    void notFoundOnServerIsNotFound() {
+        HttpConfigurationSourceProvider provider = new HttpConfigurationSourceProvider(cacheDirectory, Duration.ofHours(1));
+        failingStatus = 404;
+
+        assertThrows(ConfigurationSourceNotFoundException.class, () -> provider.open(url()));
+    }
+
+    private static String read(ConfigurationSourceProvider provider, String path) throws IOException {
+        try (InputStream source = provider.open(path)) {
+            return new String(source.readAllBytes(), UTF_8);
+        }
+    }
+}
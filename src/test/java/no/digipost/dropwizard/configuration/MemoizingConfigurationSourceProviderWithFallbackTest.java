@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.dropwizard.configuration;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.co.probablyfine.matchers.Java8Matchers.where;
+
+class MemoizingConfigurationSourceProviderWithFallbackTest {
+
+    private final AtomicInteger mainInvocations = new AtomicInteger();
+    private final AtomicInteger fallbackInvocations = new AtomicInteger();
+
+    @Test
+    void mainProviderIsNotTriedAgainForPathResolvedByFallback() throws IOException {
+        MemoizingConfigurationSourceProviderWithFallback provider = new MemoizingConfigurationSourceProviderWithFallback(
+                path -> { mainInvocations.incrementAndGet(); throw new FileNotFoundException(path); },
+                path -> { fallbackInvocations.incrementAndGet(); return new ByteArrayInputStream("fallback".getBytes()); });
+
+        for (int i = 0; i < 3; i++) {
+            try (InputStream source = provider.open("path")) {
+                assertThat(new String(source.readAllBytes()), is("fallback"));
+            }
+        }
+        assertAll(
+                () -> assertThat(mainInvocations.get(), is(1)),
+                () -> assertThat(fallbackInvocations.get(), is(3)));
+    }
+
+    @Test
+    void mainProviderIsTriedAgainWhenInvalidated() throws IOException {
+        MemoizingConfigurationSourceProviderWithFallback provider = new MemoizingConfigurationSourceProviderWithFallback(
+                path -> { mainInvocations.incrementAndGet(); throw new FileNotFoundException(path); },
+                path -> new ByteArrayInputStream("fallback".getBytes()));
+
+        provider.open("path").close();
+        provider.invalidate();
+        provider.open("path").close();
+        assertThat(mainInvocations.get(), is(2));
+    }
+
+    @Test
+    void mainProviderIsTriedAgainIfFallbackNoLongerResolvesPath() throws IOException {
+        MemoizingConfigurationSourceProviderWithFallback provider = new MemoizingConfigurationSourceProviderWithFallback(
+                path -> { if (mainInvocations.incrementAndGet() == 1) throw new FileNotFoundException(path); return new ByteArrayInputStream("main".getBytes()); },
+                path -> { if (fallbackInvocations.incrementAndGet() > 1) throw new FileNotFoundException(path); return new ByteArrayInputStream("fallback".getBytes()); });
+
+        provider.open("path").close();
+        try (InputStream source = provider.open("path")) {
+            assertThat(new String(source.readAllBytes()), is("main"));
+        }
+    }
+
+    @Test
+    void failureIsRememberedWithSameCauseAndSuppressedExceptionWithoutStackTrace() {
+        MemoizingConfigurationSourceProviderWithFallback provider = new MemoizingConfigurationSourceProviderWithFallback(
+                path -> { mainInvocations.incrementAndGet(); throw new FileNotFoundException(path + " not found"); },
+                path -> { fallbackInvocations.incrementAndGet(); throw new FileNotFoundException(path + " still not found"); },
+                Duration.ofMinutes(1));
+
+        ConfigurationSourceNotFoundException first = assertThrows(ConfigurationSourceNotFoundException.class, () -> provider.open("some/path"));
+        ConfigurationSourceNotFoundException remembered = assertThrows(ConfigurationSourceNotFoundException.class, () -> provider.open("some/path"));
+
+        assertAll(
+                () -> assertThat(mainInvocations.get(), is(1)),
+                () -> assertThat(fallbackInvocations.get(), is(1)),
+                () -> assertThat(remembered.getMessage(), is(first.getMessage())),
+                () -> assertThat(remembered.getCause(), where(Throwable::getMessage, is("some/path not found"))),
+                () -> assertThat(remembered.getSuppressed(), arrayContaining(where(Throwable::getMessage, is("some/path still not found")))),
+                () -> assertThat(remembered.getStackTrace(), emptyArray()));
+    }
+
+    @Test
+    void rememberedFailureExpires() {
+        MemoizingConfigurationSourceProviderWithFallback provider = new MemoizingConfigurationSourceProviderWithFallback(
+                path -> { mainInvocations.incrementAndGet(); throw new FileNotFoundException(path); },
+                path -> { throw new FileNotFoundException(path); },
+                Duration.ZERO);
+
+        assertThrows(ConfigurationSourceNotFoundException.class, () -> provider.open("path"));
+        assertThrows(ConfigurationSourceNotFoundException.class, () -> provider.open("path"));
+        assertThat(mainInvocations.get(), is(2));
+    }
+}
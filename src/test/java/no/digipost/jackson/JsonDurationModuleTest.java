@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.jackson;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.quicktheories.QuickTheory.qt;
+import static org.quicktheories.generators.SourceDSL.arbitrary;
+import static org.quicktheories.generators.SourceDSL.integers;
+
+class JsonDurationModuleTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JsonDurationModule());
+
+    @Test
+    void readsTheSameFormAsParse() {
+        qt()
+            .forAll(integers().all(), arbitrary().pick(JsonDuration.supportedUnits))
+            .as((amount, unit) -> amount + " " + unit.name().toLowerCase())
+            .checkAssert(duration -> assertThat(mapper.convertValue(duration, JsonDuration.class), is(JsonDuration.parse(duration))));
+    }
+
+    @Test
+    void readsCompactUnits() {
+        assertAll(
+                () -> assertThat(read("\"30s\"").duration, is(Duration.ofSeconds(30))),
+                () -> assertThat(read("\"5m\"").duration, is(Duration.ofMinutes(5))),
+                () -> assertThat(read("\"250ms\"").duration, is(Duration.ofMillis(250))),
+                () -> assertThat(read("\"2 h\"").duration, is(Duration.ofHours(2))),
+                () -> assertThat(read("\"1d\"").duration, is(Duration.ofDays(1))),
+                () -> assertThat(read("\"10us\"").duration, is(Duration.ofNanos(10_000))),
+                () -> assertThat(read("\"7 nanoseconds\"").duration, is(Duration.ofNanos(7))));
+    }
+
+    @Test
+    void frequentlyReadValuesAreTheSameInstance() throws Exception {
+        JsonDuration.clearCanonicalInstances();
+        assertThat(read("\"30s\""), sameInstance(read("\"30s\"")));
+    }
+
+    @Test
+    void readsNumbersAsMilliseconds() throws Exception {
+        assertThat(read("1500").duration, is(Duration.ofMillis(1500)));
+    }
+
+    @Test
+    void writesTheStringRepresentation() throws Exception {
+        assertThat(mapper.writeValueAsString(JsonDuration.parse("30 seconds")), is("\"30 SECONDS\""));
+    }
+
+    @Test
+    void rejectsMalformedValues() {
+        assertAll(
+                () -> assertThrows(InvalidFormatException.class, () -> read("\"30 sec\"")),
+                () -> assertThrows(InvalidFormatException.class, () -> read("\"30\"")),
+                () -> assertThrows(MismatchedInputException.class, () -> read("true")));
+    }
+
+    private JsonDuration read(String json) throws JsonProcessingException {
+        return mapper.readValue(json, JsonDuration.class);
+    }
+}
@@ -19,7 +19,12 @@ import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.time.Duration;
+import java.util.Base64;
 
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.HOURS;
@@ -32,6 +37,7 @@ import static no.digipost.jackson.JsonDuration.supportedUnits;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.quicktheories.QuickTheory.qt;
@@ -81,6 +87,99 @@ class JsonDurationTest {
 
     }
 
+    @Test
+    void parsesSignedAmountsAndToleratesSurroundingWhitespaceAroundUnit() {
+        assertAll(
+                () -> assertThat(JsonDuration.parse("-5 seconds").duration, is(Duration.ofSeconds(-5))),
+                () -> assertThat(JsonDuration.parse("+5 Seconds").duration, is(Duration.ofSeconds(5))),
+                () -> assertThat(JsonDuration.parse("5 \t MINUTES \n").duration, is(Duration.ofMinutes(5))),
+                () -> assertThat(JsonDuration.parse(Long.MAX_VALUE + " nanos").duration, is(Duration.ofNanos(Long.MAX_VALUE))),
+                () -> assertThat(JsonDuration.parse(Long.MIN_VALUE + " nanos").duration, is(Duration.ofNanos(Long.MIN_VALUE))));
+    }
+
+    @Test
+    void rejectsTrailingCharactersAndAmountsOutOfRange() {
+        assertAll(
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse("5 seconds and more")),
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse("5seconds")),
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse(" 5 seconds")),
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse("5 weeks")),
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse("9223372036854775808 nanos")),
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse(Long.MAX_VALUE + " days")),
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse(null)));
+    }
+
+    @Test
+    void frequentlyParsedValuesAreTheSameInstance() {
+        JsonDuration.clearCanonicalInstances();
+        assertThat(JsonDuration.parse("30 seconds"), sameInstance(JsonDuration.parse("30 seconds")));
+    }
+
+    @Test
+    void keepsCachedValuesAndParsesNewValuesWhenCacheIsFull() {
+        JsonDuration.clearCanonicalInstances();
+        JsonDuration cached = JsonDuration.parse("0 seconds");
+        for (int amount = 1; amount < 1000; amount++) {
+            JsonDuration.parse(amount + " seconds");
+        }
+        assertAll(
+                () -> assertThat(JsonDuration.parse("0 seconds"), sameInstance(cached)),
+                () -> assertThat(JsonDuration.parse("1000 seconds"), not(sameInstance(JsonDuration.parse("1000 seconds")))),
+                () -> assertThat(JsonDuration.parse("1000 seconds").duration, is(Duration.ofSeconds(1000))));
+    }
+
+    @Test
+    void valuesWithCompactUnitsAreNotCachedForParse() {
+        JsonDuration.clearCanonicalInstances();
+        assertThat(JsonDuration.parse("30s", true).duration, is(Duration.ofSeconds(30)));
+        assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse("30s"));
+    }
+
+    @Test
+    void parsesRegionOfCharacters() {
+        JsonDuration parsed = JsonDuration.parse(null, "timeout: 10 millis;", 9, 18, false);
+        assertThat(parsed.duration, is(Duration.ofMillis(10)));
+    }
+
+    @Test
+    void parsesRegionOfCharArrayToTheSharedInstanceOfTheSameString() {
+        JsonDuration.clearCanonicalInstances();
+        char[] chars = "timeout: 30s;".toCharArray();
+        JsonDuration parsed = JsonDuration.parse(chars, 9, 3, true);
+        assertAll(
+                () -> assertThat(parsed.duration, is(Duration.ofSeconds(30))),
+                () -> assertThat(JsonDuration.parse("30s", true), sameInstance(parsed)),
+                () -> assertThat(JsonDuration.parse(chars, 9, 3, true), sameInstance(parsed)),
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse(chars, 9, 3, false)),
+                () -> assertThrows(JsonDuration.CannotConvertToJsonDuration.class, () -> JsonDuration.parse(chars, 0, 12, true)));
+    }
+
+    @Test
+    void serializedFormIsTheSameAsBeforeTheStringRepresentationWasBuiltLazily() throws Exception {
+        byte[] serializedByEarlierVersion = Base64.getDecoder().decode(SERIALIZED_30_SECONDS);
+        JsonDuration deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedByEarlierVersion))) {
+            deserialized = (JsonDuration) in.readObject();
+        }
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(JsonDuration.parse("30 seconds"));
+        }
+        assertAll(
+                () -> assertThat(deserialized, is(JsonDuration.parse("30 seconds"))),
+                () -> assertThat(deserialized.toString(), is("30 SECONDS")),
+                () -> assertThat(serialized.toByteArray(), is(serializedByEarlierVersion)));
+    }
+
+    /**
+     * {@code JsonDuration.parse("30 seconds")} serialized by the version which built the string representation in the constructor.
+     */
+    private static final String SERIALIZED_30_SECONDS =
+            "rO0ABXNyACBuby5kaWdpcG9zdC5qYWNrc29uLkpzb25EdXJhdGlvbmj91PErW8NGAgAESgAGYW1vdW50TAAIZHVyYXRpb250ABRMamF2YS90aW1lL0R1cmF0aW9uO0wA" +
+            "FHN0cmluZ1JlcHJlc2VudGF0aW9udAASTGphdmEvbGFuZy9TdHJpbmc7TAAEdW5pdHQAIUxqYXZhL3RpbWUvdGVtcG9yYWwvVGVtcG9yYWxVbml0O3hwAAAAAAAAAB5z" +
+            "cgANamF2YS50aW1lLlNlcpVdhLobIkiyDAAAeHB3DQEAAAAAAAAAHgAAAAB4dAAKMzAgU0VDT05EU35yAB1qYXZhLnRpbWUudGVtcG9yYWwuQ2hyb25vVW5pdAAAAAAA" +
+            "AAAAEgAAeHIADmphdmEubGFuZy5FbnVtAAAAAAAAAAASAAB4cHQAB1NFQ09ORFM=";
+
     @Nested
     class ConvertFromDuration {
         @Test